@@ -0,0 +1,63 @@
+
+package com.liferay.beaconexample.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.liferay.beaconexample.util.PingAggregator;
+import com.liferay.beaconexample.util.PingJSONParser;
+import com.liferay.beaconexample.util.PortletPropsValues;
+
+/**
+ * The two passes of a full scan, without the Expando reads: every row's
+ * pings counted per region, or per beacon and proximity, at every configured
+ * resolution.
+ *
+ * @author James Falkner
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class AggregationBenchmark {
+
+	@Benchmark
+	public PingAggregator aggregateRegions(EventState state)
+		throws Exception {
+
+		PingDataset dataset = state.dataset;
+		PingAggregator aggregator = new PingAggregator(
+			dataset.getMetadata(), PortletPropsValues.BEACONS_RESOLUTIONS);
+		PingJSONParser parser = new PingJSONParser();
+
+		for (int row = 0; row < dataset.size(); row++) {
+			aggregator.beginPing(dataset.getTime(row), dataset.getId(row));
+			parser.parseRegions(dataset.getRegionsJSON(row), aggregator);
+		}
+		return aggregator;
+	}
+
+	@Benchmark
+	public PingAggregator aggregateBeacons(EventState state)
+		throws Exception {
+
+		PingDataset dataset = state.dataset;
+		PingAggregator aggregator = new PingAggregator(
+			dataset.getMetadata(), PortletPropsValues.BEACONS_RESOLUTIONS);
+		PingJSONParser parser = new PingJSONParser();
+
+		for (int row = 0; row < dataset.size(); row++) {
+			aggregator.beginPing(dataset.getTime(row), dataset.getId(row));
+			parser.parseBeacons(dataset.getBeaconsJSON(row), aggregator);
+		}
+		return aggregator;
+	}
+}
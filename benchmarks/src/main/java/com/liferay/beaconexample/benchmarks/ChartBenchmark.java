@@ -0,0 +1,78 @@
+
+package com.liferay.beaconexample.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.liferay.beaconexample.util.BeaconEventData;
+import com.liferay.beaconexample.util.BeaconEventDataKey;
+import com.liferay.beaconexample.util.BeaconExpandoDataUtil;
+import com.liferay.beaconexample.util.PingSeries;
+import com.vaadin.addon.charts.Chart;
+import com.vaadin.addon.charts.model.gsonhelpers.ChartSerialization;
+
+/**
+ * Building the charts of an event from its series, including any
+ * downsampling, and serializing their configuration to the JSON sent to the
+ * browser.
+ *
+ * @author James Falkner
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+@State(Scope.Benchmark)
+public class ChartBenchmark {
+
+	private String event;
+	private Map<String, PingSeries> regionData;
+	private String beaconName;
+	private Map<String, PingSeries> proximityData;
+
+	@Setup(Level.Trial)
+	public void setUp(EventState state)
+		throws Exception {
+
+		BeaconEventDataKey key = new BeaconEventDataKey(
+			EventState.COMPANY_ID, state.event,
+			BeaconExpandoDataUtil.FIVE_MINUTES_IN_MILLIS);
+
+		BeaconEventData data = BeaconExpandoDataUtil.getChartData(key);
+
+		event = state.event;
+		regionData = data.getRegionChartData();
+		beaconName = data.getBeaconNames().get(0);
+		proximityData = BeaconExpandoDataUtil.getBeaconChartData(key, beaconName);
+	}
+
+	@Benchmark
+	public String regionChart() {
+
+		Chart chart = BeaconExpandoDataUtil.getRegionChartForEvent(regionData);
+
+		return ChartSerialization.toJSON(chart.getConfiguration());
+	}
+
+	@Benchmark
+	public String proximityChart() {
+
+		Chart chart = BeaconExpandoDataUtil.getBeaconProximityChartForEvent(
+			event, beaconName, proximityData);
+
+		return ChartSerialization.toJSON(chart.getConfiguration());
+	}
+}
@@ -0,0 +1,63 @@
+
+package com.liferay.beaconexample.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.liferay.beaconexample.util.EventDateIndexCache;
+import com.liferay.beaconexample.util.EventRollupRegistry;
+
+/**
+ * One event, served by the {@link InMemoryExpando}, at each of the dataset
+ * sizes. The dataset is generated once per trial.
+ *
+ * @author James Falkner
+ */
+@State(Scope.Benchmark)
+public class EventState {
+
+	public static final long COMPANY_ID = 10157;
+
+	@Param({"10000", "1000000", "10000000"})
+	public int pings;
+
+	@Param("1")
+	public long seed;
+
+	public PingDataset dataset;
+	public String event;
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws Exception {
+
+		InMemoryExpando.install();
+
+		dataset = PingDataset.generate(pings, seed);
+		event = "Benchmark " + pings;
+		InMemoryExpando.putTable(COMPANY_ID, event, dataset);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+
+		clearDerivedData();
+		InMemoryExpando.removeTable(COMPANY_ID, event);
+		dataset = null;
+	}
+
+	/**
+	 * Drop everything this node has derived from the event's rows, so the
+	 * next read scans them again
+	 */
+	public void clearDerivedData() {
+
+		// also drops the event's metadata and chart data
+		EventRollupRegistry.remove(COMPANY_ID, event);
+		EventDateIndexCache.remove(COMPANY_ID, event);
+	}
+}
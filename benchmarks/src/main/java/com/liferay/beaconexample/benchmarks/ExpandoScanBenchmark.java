@@ -0,0 +1,112 @@
+
+package com.liferay.beaconexample.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.liferay.beaconexample.util.BeaconEventData;
+import com.liferay.beaconexample.util.BeaconEventMetadata;
+import com.liferay.beaconexample.util.BeaconExpandoDataUtil;
+import com.liferay.portlet.expando.model.ExpandoValue;
+import com.liferay.portlet.expando.service.ExpandoValueLocalServiceUtil;
+
+/**
+ * Reading an event's rows out of Expando: the bulk column reads of a full
+ * scan, the row reads of a time range, and a whole event load.
+ *
+ * @author James Falkner
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class ExpandoScanBenchmark {
+
+	/**
+	 * Fetch the four columns of the event table and join them by classPK, as
+	 * a full scan does before decoding the payloads
+	 */
+	@Benchmark
+	public void scanColumns(EventState state, Blackhole blackhole)
+		throws Exception {
+
+		List<ExpandoValue> dateStamps =
+			ExpandoValueLocalServiceUtil.getColumnValues(
+				EventState.COMPANY_ID, BeaconExpandoDataUtil.BEACON_DATA_CLASS,
+				state.event, BeaconExpandoDataUtil.BEACON_DATA_DATE_COL_NAME, -1, -1);
+
+		Map<Long, String> ids = getColumnStrings(
+			state, BeaconExpandoDataUtil.BEACON_DATA_ID_COL_NAME);
+		Map<Long, String> regions = getColumnStrings(
+			state, BeaconExpandoDataUtil.BEACON_DATA_REGIONS_COL_NAME);
+		Map<Long, String> beacons = getColumnStrings(
+			state, BeaconExpandoDataUtil.BEACON_DATA_BEACONS_COL_NAME);
+
+		for (ExpandoValue dateStamp : dateStamps) {
+			long classPK = dateStamp.getClassPK();
+			blackhole.consume(dateStamp.getDate().getTime());
+			blackhole.consume(ids.get(classPK));
+			blackhole.consume(regions.get(classPK));
+			blackhole.consume(beacons.get(classPK));
+		}
+	}
+
+	/**
+	 * Read a tenth of the event, from the middle, in chunks of rows found by the
+	 * event's date index, as a zoom does before the event has a rollup. The
+	 * index is built by the first invocation.
+	 */
+	@Benchmark
+	public BeaconEventData scanRange(EventState state)
+		throws Exception {
+
+		BeaconEventMetadata metadata = state.dataset.getMetadata();
+		long span = metadata.getLastTime() - metadata.getFirstTime();
+		long fromTime = metadata.getFirstTime() + span * 9 / 20;
+
+		return BeaconExpandoDataUtil.getChartDataForRange(
+			EventState.COMPANY_ID, state.event, fromTime, fromTime + span / 10);
+	}
+
+	/**
+	 * Load an event from scratch: scan, decode, aggregate at every resolution
+	 * and build the region series
+	 */
+	@Benchmark
+	public BeaconEventData loadEvent(EventState state)
+		throws Exception {
+
+		state.clearDerivedData();
+
+		return BeaconExpandoDataUtil.getChartDataForEvent(
+			state.event, EventState.COMPANY_ID);
+	}
+
+	private static Map<Long, String> getColumnStrings(
+		EventState state, String columnName)
+		throws Exception {
+
+		List<ExpandoValue> values =
+			ExpandoValueLocalServiceUtil.getColumnValues(
+				EventState.COMPANY_ID, BeaconExpandoDataUtil.BEACON_DATA_CLASS,
+				state.event, columnName, -1, -1);
+
+		Map<Long, String> result = new HashMap<Long, String>(values.size() * 2);
+		for (ExpandoValue value : values) {
+			result.put(value.getClassPK(), value.getString());
+		}
+		return result;
+	}
+}
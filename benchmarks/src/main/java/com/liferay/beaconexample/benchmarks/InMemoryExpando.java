@@ -0,0 +1,533 @@
+
+package com.liferay.beaconexample.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.liferay.beaconexample.util.BeaconExpandoDataUtil;
+import com.liferay.portal.kernel.bean.BeanLocator;
+import com.liferay.portal.kernel.bean.PortalBeanLocatorUtil;
+import com.liferay.portal.kernel.configuration.Configuration;
+import com.liferay.portal.kernel.configuration.ConfigurationFactory;
+import com.liferay.portal.kernel.configuration.ConfigurationFactoryUtil;
+import com.liferay.portal.kernel.dao.orm.Criterion;
+import com.liferay.portal.kernel.dao.orm.DynamicQuery;
+import com.liferay.portal.kernel.dao.orm.RestrictionsFactory;
+import com.liferay.portal.kernel.dao.orm.RestrictionsFactoryUtil;
+import com.liferay.portal.kernel.util.Props;
+import com.liferay.portal.kernel.util.PropsKeys;
+import com.liferay.portal.kernel.util.PropsUtil;
+import com.liferay.portlet.expando.model.ExpandoColumn;
+import com.liferay.portlet.expando.model.ExpandoValue;
+import com.liferay.portlet.expando.service.ExpandoColumnLocalService;
+import com.liferay.portlet.expando.service.ExpandoValueLocalService;
+
+/**
+ * Stand-ins for the parts of the portal the portlet's data paths use, so they
+ * can be benchmarked in a plain JVM. The Expando value and column services
+ * serve the rows of {@link PingDataset}s, one per event table, and answer
+ * the dynamic queries of the data paths. Like the real
+ * services, every query returns newly made values, so the cost of
+ * materializing rows is part of every scan; the values are
+ * {@link java.lang.reflect.Proxy} instances, which adds a reflective call per
+ * getter. Portal and portlet properties are empty, so the portlet runs with
+ * its defaults.
+ * <p>
+ * Only the service methods the data paths call are supported; the others
+ * throw {@link UnsupportedOperationException}.
+ *
+ * @author James Falkner
+ */
+public class InMemoryExpando {
+
+	public static final long DATE_COLUMN_ID = 1;
+	public static final long ID_COLUMN_ID = 2;
+	public static final long REGIONS_COLUMN_ID = 3;
+	public static final long BEACONS_COLUMN_ID = 4;
+
+	private static final ConcurrentMap<String, PingDataset> tables =
+		new ConcurrentHashMap<String, PingDataset>();
+
+	// the table ID of each event table, and the table of each ID
+	private static final ConcurrentMap<String, Long> tableIds =
+		new ConcurrentHashMap<String, Long>();
+	private static final ConcurrentMap<Long, PingDataset> tablesById =
+		new ConcurrentHashMap<Long, PingDataset>();
+	private static final AtomicLong nextTableId = new AtomicLong(1);
+
+	private static boolean installed;
+
+	/**
+	 * Install the stand-ins; must be called before any portlet class reads
+	 * its properties or a service
+	 */
+	public static synchronized void install() {
+
+		if (installed) {
+			return;
+		}
+
+		PropsUtil.setProps(newProxy(Props.class, new PropertiesHandler()));
+		ConfigurationFactoryUtil.setConfigurationFactory(
+			newProxy(ConfigurationFactory.class, new ConfigurationFactoryHandler()));
+		PortalBeanLocatorUtil.setBeanLocator(
+			newProxy(BeanLocator.class, new BeanLocatorHandler()));
+		new RestrictionsFactoryUtil().setRestrictionsFactory(
+			newProxy(RestrictionsFactory.class, new RestrictionsFactoryHandler()));
+
+		installed = true;
+	}
+
+	/**
+	 * Serve the rows of a dataset as the table of an event
+	 */
+	public static void putTable(
+		long companyId, String event, PingDataset dataset) {
+
+		String key = getKey(companyId, event);
+		tables.put(key, dataset);
+		tablesById.put(getTableId(key), dataset);
+	}
+
+	public static void removeTable(long companyId, String event) {
+
+		String key = getKey(companyId, event);
+		tables.remove(key);
+
+		Long tableId = tableIds.get(key);
+		if (tableId != null) {
+			tablesById.remove(tableId);
+		}
+	}
+
+	/**
+	 * The ID of an event table, the same for every dataset it serves
+	 */
+	private static long getTableId(String key) {
+
+		Long tableId = tableIds.get(key);
+		if (tableId == null) {
+			tableIds.putIfAbsent(key, nextTableId.getAndIncrement());
+			tableId = tableIds.get(key);
+		}
+		return tableId;
+	}
+
+	private static PingDataset getTable(
+		long companyId, String className, String event) {
+
+		if (!BeaconExpandoDataUtil.BEACON_DATA_CLASS.equals(className)) {
+			return null;
+		}
+		return tables.get(getKey(companyId, event));
+	}
+
+	private static long getColumnId(String columnName) {
+
+		if (BeaconExpandoDataUtil.BEACON_DATA_DATE_COL_NAME.equals(columnName)) {
+			return DATE_COLUMN_ID;
+		}
+		if (BeaconExpandoDataUtil.BEACON_DATA_ID_COL_NAME.equals(columnName)) {
+			return ID_COLUMN_ID;
+		}
+		if (BeaconExpandoDataUtil.BEACON_DATA_REGIONS_COL_NAME.equals(columnName)) {
+			return REGIONS_COLUMN_ID;
+		}
+		if (BeaconExpandoDataUtil.BEACON_DATA_BEACONS_COL_NAME.equals(columnName)) {
+			return BEACONS_COLUMN_ID;
+		}
+		return -1;
+	}
+
+	private static ExpandoValue newValue(
+		PingDataset dataset, long columnId, int row) {
+
+		Object data;
+		if (columnId == DATE_COLUMN_ID) {
+			data = new Date(dataset.getTime(row));
+		}
+		else if (columnId == ID_COLUMN_ID) {
+			data = dataset.getId(row);
+		}
+		else if (columnId == REGIONS_COLUMN_ID) {
+			data = dataset.getRegionsJSON(row);
+		}
+		else {
+			data = dataset.getBeaconsJSON(row);
+		}
+		return newProxy(ExpandoValue.class, new ValueHandler(columnId, row + 1, data));
+	}
+
+	private static String getKey(long companyId, String event) {
+
+		return companyId + "#" + event;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+
+		return (T) Proxy.newProxyInstance(
+			InMemoryExpando.class.getClassLoader(), new Class<?>[] {type}, handler);
+	}
+
+	/**
+	 * Implements the <code>Object</code> methods of a proxy; subclasses
+	 * implement the methods of its interface
+	 */
+	private static abstract class StandInHandler implements InvocationHandler {
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+
+			if (method.getDeclaringClass() == Object.class) {
+				String name = method.getName();
+				if (name.equals("equals")) {
+					return proxy == args[0];
+				}
+				if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+				return getClass().getSimpleName();
+			}
+
+			return invoke(method, args);
+		}
+
+		protected abstract Object invoke(Method method, Object[] args)
+			throws Throwable;
+
+		protected Object unsupported(Method method) {
+
+			throw new UnsupportedOperationException(
+				"Not supported by the in-memory Expando: " + method);
+		}
+	}
+
+	private static class PropertiesHandler extends StandInHandler {
+
+		private final Properties properties = new Properties();
+
+		private PropertiesHandler() {
+
+			properties.setProperty(
+				PropsKeys.LIFERAY_HOME, System.getProperty("java.io.tmpdir"));
+		}
+
+		@Override
+		protected Object invoke(Method method, Object[] args) {
+
+			String name = method.getName();
+			if (name.equals("get")) {
+				return properties.getProperty((String) args[0]);
+			}
+			if (name.equals("contains")) {
+				return properties.containsKey(args[0]);
+			}
+			if (name.equals("getArray")) {
+				return new String[0];
+			}
+			if (name.equals("getProperties")) {
+				return properties;
+			}
+			return unsupported(method);
+		}
+	}
+
+	private static class ConfigurationFactoryHandler extends StandInHandler {
+
+		@Override
+		protected Object invoke(Method method, Object[] args) {
+
+			// portlet.properties, for any class loader
+			return newProxy(Configuration.class, new PropertiesHandler());
+		}
+	}
+
+	private static class BeanLocatorHandler extends StandInHandler {
+
+		private final Object valueService =
+			newProxy(ExpandoValueLocalService.class, new ValueServiceHandler());
+		private final Object columnService =
+			newProxy(ExpandoColumnLocalService.class, new ColumnServiceHandler());
+
+		@Override
+		protected Object invoke(Method method, Object[] args) {
+
+			String name = method.getName();
+			if (name.equals("getClassLoader")) {
+				return InMemoryExpando.class.getClassLoader();
+			}
+			if (name.equals("locate") && args[0] instanceof String) {
+				if (ExpandoValueLocalService.class.getName().equals(args[0])) {
+					return valueService;
+				}
+				if (ExpandoColumnLocalService.class.getName().equals(args[0])) {
+					return columnService;
+				}
+			}
+			return unsupported(method);
+		}
+	}
+
+	private static class ValueServiceHandler extends StandInHandler {
+
+		@Override
+		protected Object invoke(Method method, Object[] args) {
+
+			String name = method.getName();
+			Class<?>[] types = method.getParameterTypes();
+
+			// (companyId, className, tableName, columnName, start, end)
+			if (name.equals("getColumnValues") && types.length == 6 &&
+				types[1] == String.class && types[3] == String.class) {
+
+				return getColumnValues(
+					(Long) args[0], (String) args[1], (String) args[2],
+					(String) args[3]);
+			}
+
+			if (name.equals("dynamicQuery") && types.length == 0) {
+				return newProxy(DynamicQuery.class, new DynamicQueryHandler());
+			}
+
+			// (dynamicQuery)
+			if (name.equals("dynamicQuery") && types.length == 1) {
+				return getQueryValues(
+					(DynamicQueryHandler) Proxy.getInvocationHandler(args[0]));
+			}
+			return unsupported(method);
+		}
+
+		private List<ExpandoValue> getColumnValues(
+			long companyId, String className, String event, String columnName) {
+
+			PingDataset dataset = getTable(companyId, className, event);
+			long columnId = getColumnId(columnName);
+			if (dataset == null || columnId < 0) {
+				return Collections.emptyList();
+			}
+
+			List<ExpandoValue> values = new ArrayList<ExpandoValue>(dataset.size());
+			for (int row = 0; row < dataset.size(); row++) {
+				values.add(newValue(dataset, columnId, row));
+			}
+			return values;
+		}
+
+		/**
+		 * The values of a query restricted by table ID, column IDs and
+		 * classPKs, the only kind the data paths make
+		 */
+		private List<ExpandoValue> getQueryValues(DynamicQueryHandler query) {
+
+			PingDataset dataset = tablesById.get(query.getValue("tableId"));
+			Object[] columnIds = query.getValues("columnId");
+			Object[] classPKs = query.getValues("classPK");
+			if (dataset == null || columnIds == null || classPKs == null) {
+				return Collections.emptyList();
+			}
+
+			List<ExpandoValue> values =
+				new ArrayList<ExpandoValue>(classPKs.length * columnIds.length);
+			for (Object classPK : classPKs) {
+				int row = (int) ((Long) classPK - 1);
+				if (row < 0 || row >= dataset.size()) {
+					continue;
+				}
+				for (Object columnId : columnIds) {
+					long id = (Long) columnId;
+					if (id >= DATE_COLUMN_ID && id <= BEACONS_COLUMN_ID) {
+						values.add(newValue(dataset, id, row));
+					}
+				}
+			}
+			return values;
+		}
+	}
+
+	/**
+	 * A dynamic query; only keeps the values of its restrictions
+	 */
+	private static class DynamicQueryHandler extends StandInHandler {
+
+		private final Map<String, Object[]> restrictions =
+			new HashMap<String, Object[]>();
+
+		private Object getValue(String propertyName) {
+
+			Object[] values = restrictions.get(propertyName);
+			return values != null ? values[0] : null;
+		}
+
+		private Object[] getValues(String propertyName) {
+
+			return restrictions.get(propertyName);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+
+			if (method.getName().equals("add")) {
+				RestrictionHandler restriction =
+					(RestrictionHandler) Proxy.getInvocationHandler(args[0]);
+				restrictions.put(restriction.propertyName, restriction.values);
+				return proxy;
+			}
+			return super.invoke(proxy, method, args);
+		}
+
+		@Override
+		protected Object invoke(Method method, Object[] args) {
+
+			return unsupported(method);
+		}
+	}
+
+	private static class RestrictionsFactoryHandler extends StandInHandler {
+
+		@Override
+		protected Object invoke(Method method, Object[] args) {
+
+			String name = method.getName();
+			Class<?>[] types = method.getParameterTypes();
+
+			// (propertyName, value)
+			if (name.equals("eq")) {
+				return newProxy(
+					Criterion.class,
+					new RestrictionHandler((String) args[0], new Object[] {args[1]}));
+			}
+
+			// (propertyName, values)
+			if (name.equals("in") && types[1] == Object[].class) {
+				return newProxy(
+					Criterion.class,
+					new RestrictionHandler((String) args[0], (Object[]) args[1]));
+			}
+			return unsupported(method);
+		}
+	}
+
+	private static class RestrictionHandler extends StandInHandler {
+
+		private final String propertyName;
+		private final Object[] values;
+
+		private RestrictionHandler(String propertyName, Object[] values) {
+
+			this.propertyName = propertyName;
+			this.values = values;
+		}
+
+		@Override
+		protected Object invoke(Method method, Object[] args) {
+
+			return unsupported(method);
+		}
+	}
+
+	private static class ColumnServiceHandler extends StandInHandler {
+
+		@Override
+		protected Object invoke(Method method, Object[] args) {
+
+			String name = method.getName();
+			Class<?>[] types = method.getParameterTypes();
+
+			// (companyId, className, tableName, name)
+			if (name.equals("getColumn") && types.length == 4 &&
+				types[1] == String.class) {
+
+				PingDataset dataset =
+					getTable((Long) args[0], (String) args[1], (String) args[2]);
+				long columnId = getColumnId((String) args[3]);
+				if (dataset == null || columnId < 0) {
+					return null;
+				}
+				return newProxy(
+					ExpandoColumn.class,
+					new ColumnHandler(
+						getTableId(getKey((Long) args[0], (String) args[2])),
+						columnId, (String) args[3]));
+			}
+			return unsupported(method);
+		}
+	}
+
+	private static class ColumnHandler extends StandInHandler {
+
+		private final long tableId;
+		private final long columnId;
+		private final String name;
+
+		private ColumnHandler(long tableId, long columnId, String name) {
+
+			this.tableId = tableId;
+			this.columnId = columnId;
+			this.name = name;
+		}
+
+		@Override
+		protected Object invoke(Method method, Object[] args) {
+
+			if (method.getName().equals("getTableId")) {
+				return tableId;
+			}
+			if (method.getName().equals("getColumnId")) {
+				return columnId;
+			}
+			if (method.getName().equals("getName")) {
+				return name;
+			}
+			return unsupported(method);
+		}
+	}
+
+	private static class ValueHandler extends StandInHandler {
+
+		private final long columnId;
+		private final long classPK;
+		private final Object data;
+
+		private ValueHandler(long columnId, long classPK, Object data) {
+
+			this.columnId = columnId;
+			this.classPK = classPK;
+			this.data = data;
+		}
+
+		@Override
+		protected Object invoke(Method method, Object[] args) {
+
+			String name = method.getName();
+			if (name.equals("getColumnId")) {
+				return columnId;
+			}
+			if (name.equals("getClassPK")) {
+				return classPK;
+			}
+			if (name.equals("getDate") && data instanceof Date) {
+				return data;
+			}
+			if (name.equals("getString") && args == null) {
+				// dates are stored as their time in milliseconds
+				return data instanceof Date ?
+					String.valueOf(((Date) data).getTime()) : data;
+			}
+			return unsupported(method);
+		}
+	}
+}
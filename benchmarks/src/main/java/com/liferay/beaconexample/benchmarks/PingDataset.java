@@ -0,0 +1,136 @@
+
+package com.liferay.beaconexample.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.liferay.beaconexample.util.BeaconDataGenerator;
+import com.liferay.beaconexample.util.BeaconEventMetadata;
+import com.liferay.beaconexample.util.Ping;
+
+/**
+ * The rows of one event's Expando table, held column by column the way
+ * they're stored: a date, an ID and the regions and beacons JSON payloads per
+ * ping. Rows are generated by a {@link BeaconDataGenerator} on a single
+ * thread, so the same size and seed always produce the same rows, in the same
+ * order. The classPK of a row is its index + 1.
+ *
+ * @author James Falkner
+ */
+public class PingDataset {
+
+	/**
+	 * The duration of every dataset, a week of five minute buckets
+	 */
+	public static final int BUCKET_COUNT = 7 * 24 * 12;
+
+	public static final long START_TIME = 1404172800000L;
+
+	/**
+	 * Generate a dataset
+	 * @param pings The approximate number of pings; the generator draws the
+	 *        number of pings of each bucket, so the actual number differs a
+	 *        little
+	 * @param seed The seed of the generator
+	 * @return The dataset
+	 * @throws Exception if things go wrong
+	 */
+	public static PingDataset generate(int pings, long seed)
+		throws Exception {
+
+		BeaconDataGenerator generator = new BeaconDataGenerator();
+		generator.setBucketCount(BUCKET_COUNT);
+		generator.setPingsPerBucket(
+			(int) Math.max(1, Math.round((double) pings / BUCKET_COUNT + 0.5)));
+		generator.setStartTime(START_TIME);
+		generator.setSeed(seed);
+		generator.setThreads(1);
+		generator.setPartitions(1);
+
+		final PingDataset dataset = new PingDataset(pings);
+		generator.generate(new BeaconDataGenerator.PingSink() {
+
+			@Override
+			public void write(String event, List<Ping> batch) {
+
+				dataset.addAll(batch);
+			}
+		});
+		return dataset;
+	}
+
+	private long[] times;
+	private String[] ids;
+	private String[] regions;
+	private String[] beacons;
+	private int size;
+	private long firstTime = Long.MAX_VALUE;
+	private long lastTime = Long.MIN_VALUE;
+
+	private PingDataset(int capacity) {
+
+		times = new long[capacity];
+		ids = new String[capacity];
+		regions = new String[capacity];
+		beacons = new String[capacity];
+	}
+
+	private synchronized void addAll(List<Ping> pings) {
+
+		if (size + pings.size() > times.length) {
+			int capacity = Math.max(size + pings.size(), times.length * 3 / 2);
+			times = Arrays.copyOf(times, capacity);
+			ids = Arrays.copyOf(ids, capacity);
+			regions = Arrays.copyOf(regions, capacity);
+			beacons = Arrays.copyOf(beacons, capacity);
+		}
+
+		for (Ping ping : pings) {
+			times[size] = ping.getTime();
+			ids[size] = ping.getId();
+			regions[size] = ping.getRegionsJSON();
+			beacons[size] = ping.getBeaconsJSON();
+			size++;
+
+			firstTime = Math.min(firstTime, ping.getTime());
+			lastTime = Math.max(lastTime, ping.getTime());
+		}
+	}
+
+	/**
+	 * @return The number of rows
+	 */
+	public int size() {
+
+		return size;
+	}
+
+	public long getTime(int row) {
+
+		return times[row];
+	}
+
+	public String getId(int row) {
+
+		return ids[row];
+	}
+
+	public String getRegionsJSON(int row) {
+
+		return regions[row];
+	}
+
+	public String getBeaconsJSON(int row) {
+
+		return beacons[row];
+	}
+
+	/**
+	 * @return The first and last ping times and the number of rows, like the
+	 *         metadata the portlet reads from the date column
+	 */
+	public BeaconEventMetadata getMetadata() {
+
+		return new BeaconEventMetadata(firstTime, lastTime, size);
+	}
+}
@@ -0,0 +1,68 @@
+
+package com.liferay.beaconexample.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.liferay.beaconexample.util.PingAggregator;
+import com.liferay.beaconexample.util.PingJSONParser;
+
+/**
+ * Decoding the regions and beacons payloads of every row. The payloads are
+ * fed to an aggregator with a single bucket and a single ping ID, so what's
+ * measured is mostly the parsing and the interning of names.
+ *
+ * @author James Falkner
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class PingJSONBenchmark {
+
+	@Benchmark
+	public PingAggregator decodeRegions(EventState state)
+		throws Exception {
+
+		PingDataset dataset = state.dataset;
+		PingAggregator aggregator = newAggregator(dataset);
+		PingJSONParser parser = new PingJSONParser();
+
+		for (int row = 0; row < dataset.size(); row++) {
+			aggregator.beginPing(dataset.getTime(row), 0);
+			parser.parseRegions(dataset.getRegionsJSON(row), aggregator);
+		}
+		return aggregator;
+	}
+
+	@Benchmark
+	public PingAggregator decodeBeacons(EventState state)
+		throws Exception {
+
+		PingDataset dataset = state.dataset;
+		PingAggregator aggregator = newAggregator(dataset);
+		PingJSONParser parser = new PingJSONParser();
+
+		for (int row = 0; row < dataset.size(); row++) {
+			aggregator.beginPing(dataset.getTime(row), 0);
+			parser.parseBeacons(dataset.getBeaconsJSON(row), aggregator);
+		}
+		return aggregator;
+	}
+
+	private static PingAggregator newAggregator(PingDataset dataset) {
+
+		// a bucket wider than the epoch so far, holding every ping
+		long resolution = dataset.getMetadata().getLastTime() + 1;
+
+		return new PingAggregator(dataset.getMetadata(), new long[] {resolution});
+	}
+}
@@ -0,0 +1,80 @@
+
+package com.liferay.beaconexample.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.liferay.beaconexample.util.BeaconEventData;
+import com.liferay.beaconexample.util.BeaconEventDataCache;
+import com.liferay.beaconexample.util.BeaconEventDataKey;
+import com.liferay.beaconexample.util.BeaconExpandoDataUtil;
+
+/**
+ * Turning an event's rollup into chart series, at the default resolution.
+ * The rollup is built once per trial; each invocation drops the cached chart
+ * data so it's built again.
+ *
+ * @author James Falkner
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+@State(Scope.Benchmark)
+public class SeriesBenchmark {
+
+	private BeaconEventDataKey key;
+
+	@Setup(Level.Trial)
+	public void setUp(EventState state)
+		throws Exception {
+
+		key = new BeaconEventDataKey(
+			EventState.COMPANY_ID, state.event,
+			BeaconExpandoDataUtil.FIVE_MINUTES_IN_MILLIS);
+
+		BeaconExpandoDataUtil.getChartData(key);
+	}
+
+	/**
+	 * The region series and the beacon catalog, as shown when an event is
+	 * selected
+	 */
+	@Benchmark
+	public BeaconEventData regionSeries(EventState state)
+		throws Exception {
+
+		BeaconEventDataCache.remove(EventState.COMPANY_ID, state.event);
+
+		return BeaconExpandoDataUtil.getChartData(key);
+	}
+
+	/**
+	 * The proximity series of every beacon, on top of the region series
+	 */
+	@Benchmark
+	public void beaconSeries(EventState state, Blackhole blackhole)
+		throws Exception {
+
+		BeaconEventDataCache.remove(EventState.COMPANY_ID, state.event);
+
+		BeaconEventData data = BeaconExpandoDataUtil.getChartData(key);
+		for (String beaconName : data.getBeaconNames()) {
+			blackhole.consume(
+				BeaconExpandoDataUtil.getBeaconChartData(key, beaconName));
+		}
+	}
+}
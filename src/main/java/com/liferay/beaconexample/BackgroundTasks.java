@@ -0,0 +1,51 @@
+
+package com.liferay.beaconexample;
+
+import java.io.Serializable;
+
+import com.vaadin.ui.UI;
+
+/**
+ * Counts the background tasks of a UI, and has the browser poll the server
+ * while any of them runs, so the changes they make with
+ * <code>UI.access</code> are shown. Vaadin push isn't served to portlets, so
+ * polling is how background changes reach the browser. A task is anything
+ * that changes the UI from another thread, such as a load or a purge. Called
+ * with the UI's lock held.
+ *
+ * @author James Falkner
+ *
+ */
+@SuppressWarnings("serial")
+public class BackgroundTasks implements Serializable {
+
+	public static final int POLL_INTERVAL = 1000;
+
+	private final UI ui;
+	private int count;
+
+	public BackgroundTasks(UI ui) {
+
+		this.ui = ui;
+	}
+
+	/**
+	 * A task has started; polling is turned on for the first one
+	 */
+	public void start() {
+
+		if (count++ == 0) {
+			ui.setPollInterval(POLL_INTERVAL);
+		}
+	}
+
+	/**
+	 * A task has ended; polling is turned off after the last one
+	 */
+	public void end() {
+
+		if (count > 0 && --count == 0) {
+			ui.setPollInterval(-1);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+
+package com.liferay.beaconexample;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import com.liferay.beaconexample.util.BeaconEventBroadcaster;
+import com.liferay.beaconexample.util.BeaconEventLoader;
+import com.liferay.beaconexample.util.EventInvalidator;
+
+/**
+ * Receives the {@link EventInvalidator} notices of the other nodes of the
+ * cluster while the plugin is deployed, and stops the plugin's background
+ * threads when it is undeployed
+ * 
+ * @author James Falkner
+ *
+ */
+public class BeaconClusterListener implements ServletContextListener {
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+
+		EventInvalidator.register();
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+
+		EventInvalidator.unregister();
+		BeaconEventLoader.shutdown();
+		BeaconEventBroadcaster.shutdown();
+	}
+}
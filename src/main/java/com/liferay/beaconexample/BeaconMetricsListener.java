@@ -0,0 +1,44 @@
+
+package com.liferay.beaconexample;
+
+import javax.management.JMException;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import com.liferay.beaconexample.util.BeaconMetrics;
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+
+/**
+ * Registers the MBeans of the {@link BeaconMetrics} while the plugin is
+ * deployed
+ * 
+ * @author James Falkner
+ *
+ */
+public class BeaconMetricsListener implements ServletContextListener {
+
+	@Override
+	public void contextInitialized(ServletContextEvent event) {
+
+		try {
+			BeaconMetrics.registerMBeans();
+		}
+		catch (JMException e) {
+			_log.error("Unable to register the beacon metrics MBeans", e);
+		}
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+
+		try {
+			BeaconMetrics.unregisterMBeans();
+		}
+		catch (JMException e) {
+			_log.error("Unable to unregister the beacon metrics MBeans", e);
+		}
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(BeaconMetricsListener.class);
+}
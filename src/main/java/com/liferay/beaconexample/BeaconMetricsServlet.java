@@ -0,0 +1,67 @@
+
+package com.liferay.beaconexample;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.liferay.beaconexample.util.BeaconMetrics;
+import com.liferay.portal.kernel.util.StringUtil;
+import com.liferay.portal.kernel.util.Validator;
+
+/**
+ * Serves the {@link BeaconMetrics} in the Prometheus text format, for
+ * scraping. Only the addresses in the <code>hosts.allowed</code> init
+ * parameter, a comma-separated list, may read them; without it, only
+ * requests from the local host are served.
+ * 
+ * @author James Falkner
+ *
+ */
+@SuppressWarnings("serial")
+public class BeaconMetricsServlet extends HttpServlet {
+
+	private static final String[] LOCAL_HOSTS = {
+		"127.0.0.1", "0:0:0:0:0:0:0:1", "::1"};
+
+	private final Set<String> hostsAllowed = new HashSet<String>();
+
+	@Override
+	public void init() {
+
+		String hosts = getInitParameter("hosts.allowed");
+
+		if (Validator.isNull(hosts)) {
+			for (String host : LOCAL_HOSTS) {
+				hostsAllowed.add(host);
+			}
+			return;
+		}
+
+		for (String host : StringUtil.split(hosts)) {
+			hostsAllowed.add(host.trim());
+		}
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+		throws IOException {
+
+		if (!hostsAllowed.contains(request.getRemoteAddr())) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+
+		response.setContentType("text/plain; version=0.0.4");
+		response.setCharacterEncoding("UTF-8");
+
+		Writer writer = response.getWriter();
+		BeaconMetrics.writePrometheus(writer);
+		writer.flush();
+	}
+}
@@ -5,7 +5,10 @@ import java.util.Map;
 
 import javax.portlet.PortletSession;
 
+import com.liferay.beaconexample.util.BeaconEventDataKey;
 import com.liferay.beaconexample.util.BeaconExpandoDataUtil;
+import com.liferay.beaconexample.util.BeaconMetrics;
+import com.liferay.beaconexample.util.PingSeries;
 import com.liferay.portal.kernel.util.Validator;
 import com.vaadin.addon.ipcforliferay.LiferayIPC;
 import com.vaadin.addon.ipcforliferay.event.LiferayIPCEvent;
@@ -13,7 +16,6 @@ import com.vaadin.addon.ipcforliferay.event.LiferayIPCEventListener;
 import com.vaadin.annotations.PreserveOnRefresh;
 import com.vaadin.annotations.Theme;
 import com.vaadin.annotations.Widgetset;
-import com.vaadin.data.Container;
 import com.vaadin.data.Property.ValueChangeEvent;
 import com.vaadin.data.Property.ValueChangeListener;
 import com.vaadin.server.VaadinRequest;
@@ -42,7 +44,9 @@ import com.vaadin.ui.VerticalLayout;
 public class BeaconPingTable extends UI {
 
 	private LiferayIPC ipc;
+	private IPCSubscriptions subscriptions;
 	private VerticalLayout layout = new VerticalLayout();
+	private PingSeries selectedSeries;
 
 	@Override
 	public void init(VaadinRequest request) {
@@ -51,6 +55,7 @@ public class BeaconPingTable extends UI {
 		
 		ipc = new LiferayIPC();
 		ipc.extend(this);
+		subscriptions = new IPCSubscriptions(this, ipc);
 
 		// make the UI
 		
@@ -71,9 +76,12 @@ public class BeaconPingTable extends UI {
 
 				Object val = t.getValue();
 
+				// the time of the selected point, so charts at any resolution
+				// can find it
 				ipc.sendEvent(
 					BeaconExpandoDataUtil.IPC_SELECTED_BUCKET, Validator.isNotNull(val)
-						? val.toString() : "");
+						? String.valueOf(selectedSeries.getTime(((Long) val).intValue()))
+						: "");
 			}
 		});
 
@@ -81,12 +89,9 @@ public class BeaconPingTable extends UI {
 
 		// listen for event selects from the BeaconRegionGraph portlet, and update
 		// the table (re-bind the Table to a new set of data)
-		ipc.addLiferayIPCEventListener(
+		subscriptions.subscribe(
 			BeaconExpandoDataUtil.IPC_SELECTED_REGION, new LiferayIPCEventListener() {
 
-				@SuppressWarnings({
-					"unchecked"
-				})
 				public void eventReceived(LiferayIPCEvent event) {
 
 					try {
@@ -95,16 +100,29 @@ public class BeaconPingTable extends UI {
 						PortletSession ps =
 										((WrappedPortletSession) (VaadinService.getCurrentRequest().getWrappedSession())).getPortletSession();
 
-						Map<String, Container> data =
-							(Map<String, Container>) ps.getAttribute(
-								BeaconExpandoDataUtil.IPC_REGION_CHART_DATA,
+						BeaconEventDataKey key =
+							(BeaconEventDataKey) ps.getAttribute(
+								BeaconExpandoDataUtil.IPC_EVENT_DATA_KEY,
 								PortletSession.APPLICATION_SCOPE);
 
-						Container regionData = data.get(event.getData());
+						if (Validator.isNull(key)) {
+							return;
+						}
+
+						// resolve the shared data of the event
+						Map<String, PingSeries> data =
+							BeaconExpandoDataUtil.getChartData(key).getRegionChartData();
+
+						PingSeries regionData = data.get(event.getData());
 
 						if (Validator.isNotNull(regionData)) {
 							// re-bind data table to new data
-							t.setContainerDataSource(regionData);
+							selectedSeries = regionData;
+
+							long start = System.nanoTime();
+							t.setContainerDataSource(regionData.toContainer());
+							BeaconMetrics.CONTAINER_BUILD_SECONDS.observeSince(start);
+
 							t.setCaption("Pings for Region: " + event.getData());
 						}
 					}
@@ -118,4 +136,15 @@ public class BeaconPingTable extends UI {
 			});
 	}
 
+	/**
+	 * Deliver the IPC events received in this round trip, at most one per
+	 * topic, before the response is written
+	 */
+	@Override
+	public void beforeClientResponse(boolean initial) {
+
+		super.beforeClientResponse(initial);
+		subscriptions.flush();
+	}
+
 }
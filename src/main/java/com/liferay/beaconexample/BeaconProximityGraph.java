@@ -2,13 +2,17 @@
 package com.liferay.beaconexample;
 
 import java.io.Serializable;
-import java.util.Date;
 import java.util.Map;
 
 import javax.portlet.PortletSession;
 
+import com.liferay.beaconexample.util.BeaconEventDataKey;
+import com.liferay.beaconexample.util.BeaconEventUpdate;
 import com.liferay.beaconexample.util.BeaconExpandoDataUtil;
+import com.liferay.beaconexample.util.BeaconMetrics;
+import com.liferay.beaconexample.util.PingSeries;
 import com.liferay.portal.kernel.util.Validator;
+import com.liferay.portal.util.PortalUtil;
 import com.vaadin.addon.charts.Chart;
 import com.vaadin.addon.ipcforliferay.LiferayIPC;
 import com.vaadin.addon.ipcforliferay.event.LiferayIPCEvent;
@@ -16,11 +20,11 @@ import com.vaadin.addon.ipcforliferay.event.LiferayIPCEventListener;
 import com.vaadin.annotations.PreserveOnRefresh;
 import com.vaadin.annotations.Theme;
 import com.vaadin.annotations.Widgetset;
-import com.vaadin.data.Container;
 import com.vaadin.data.Property.ValueChangeEvent;
 import com.vaadin.data.Property.ValueChangeListener;
 import com.vaadin.server.VaadinPortletService;
 import com.vaadin.server.VaadinRequest;
+import com.vaadin.ui.CheckBox;
 import com.vaadin.ui.HorizontalLayout;
 import com.vaadin.ui.NativeSelect;
 import com.vaadin.ui.Notification;
@@ -46,9 +50,13 @@ public class BeaconProximityGraph extends UI implements Serializable {
 	private VerticalLayout layout = new VerticalLayout();
 	private HorizontalLayout chartLayout = new HorizontalLayout();
 	private LiferayIPC ipc;
+	private IPCSubscriptions subscriptions;
 	private String selectedEvent;
-	private Date firstDate;
-	private Map<String, Map<String, Container>> selectedEventData;
+	private BeaconEventDataKey selectedEventKey;
+	private final CheckBox liveCheckBox = new CheckBox("Live updates");
+	private Chart proximityChart;
+	private String proximityChartBeacon;
+	private LiveChartUpdater liveUpdater;
 
 	@Override
 	protected void init(VaadinRequest request) {
@@ -56,6 +64,23 @@ public class BeaconProximityGraph extends UI implements Serializable {
 		// the IPC listener
 		ipc = new LiferayIPC();
 		ipc.extend(this);
+		subscriptions = new IPCSubscriptions(this, ipc);
+
+		liveUpdater = new LiveChartUpdater(
+			this, new BackgroundTasks(this), PortalUtil.getCompanyId(
+				VaadinPortletService.getCurrentPortletRequest())) {
+
+			@Override
+			protected void updateChart(BeaconEventUpdate update) {
+
+				Map<String, int[]> proxCounts =
+					update.getBeaconCounts().get(proximityChartBeacon);
+				if (proxCounts != null) {
+					BeaconExpandoDataUtil.updateChart(
+						proximityChart, proxCounts, update.getFromIndex());
+				}
+			}
+		};
 
 		// make the UI
 		layout.setMargin(false);
@@ -64,14 +89,24 @@ public class BeaconProximityGraph extends UI implements Serializable {
 		final NativeSelect ls = new NativeSelect("Beacon");
 		ls.setEnabled(false);
 		layout.addComponent(ls);
+		layout.addComponent(liveCheckBox);
 		layout.addComponent(chartLayout);
 
+		// in live mode, new pings are added to the open chart as they arrive
+		liveCheckBox.addValueChangeListener(new ValueChangeListener() {
+
+			@Override
+			public void valueChange(ValueChangeEvent evt) {
+
+				updateLiveMode();
+			}
+		});
+
 		// add listener to fetch session data and populate the NativeSelect
 		// with a list of beacon data points
-		ipc.addLiferayIPCEventListener(
+		subscriptions.subscribe(
 			BeaconExpandoDataUtil.IPC_SELECTED_EVENT, new LiferayIPCEventListener() {
 
-				@SuppressWarnings("unchecked")
 				@Override
 				public void eventReceived(LiferayIPCEvent event) {
 
@@ -83,28 +118,35 @@ public class BeaconProximityGraph extends UI implements Serializable {
 					PortletSession psession = VaadinPortletService.getCurrentPortletRequest()
 							.getPortletSession();
 					
-					selectedEventData =
-						(Map<String, Map<String, Container>>) psession.getAttribute(
-							BeaconExpandoDataUtil.IPC_BEACON_CHART_DATA,
-							PortletSession.APPLICATION_SCOPE);
-
-					firstDate =
-						(Date) psession.getAttribute(
-							BeaconExpandoDataUtil.IPC_REGION_FIRST_DATE,
+					selectedEventKey =
+						(BeaconEventDataKey) psession.getAttribute(
+							BeaconExpandoDataUtil.IPC_EVENT_DATA_KEY,
 							PortletSession.APPLICATION_SCOPE);
 
 					selectedEvent = evt;
 
 					chartLayout.removeAllComponents();
+					proximityChart = null;
+					updateLiveMode();
 
 					ls.setEnabled(false);
 					
 					ls.removeAllItems();
 
-					if (Validator.isNotNull(selectedEventData) &&
-						Validator.isNotNull(firstDate)) {
-						for (String beaconName : selectedEventData.keySet()) {
-							ls.addItem(beaconName);
+					if (Validator.isNotNull(selectedEventKey)) {
+						try {
+							// only the names, the series are built on selection
+							for (String beaconName : BeaconExpandoDataUtil.getChartData(
+									selectedEventKey).getBeaconNames()) {
+
+								ls.addItem(beaconName);
+							}
+						}
+						catch (Exception e) {
+							Notification.show(
+								"Error", e.getLocalizedMessage(),
+								Notification.Type.WARNING_MESSAGE);
+							e.printStackTrace();
 						}
 					}
 					ls.setEnabled(true);
@@ -125,17 +167,25 @@ public class BeaconProximityGraph extends UI implements Serializable {
 				}
 
 				final String beaconName = newValue.toString();
-
-				Map<String, Container> proxData = selectedEventData.get(beaconName);
+				long start = System.nanoTime();
 
 				try {
+					Map<String, PingSeries> proxData =
+						BeaconExpandoDataUtil.getBeaconChartData(
+							selectedEventKey, beaconName);
+
 					Chart chart =
 						BeaconExpandoDataUtil.getBeaconProximityChartForEvent(
-							selectedEvent, beaconName, proxData, firstDate);
+							selectedEvent, beaconName, proxData);
 
 					chartLayout.removeAllComponents();
 					chartLayout.addComponent(chart);
 					chartLayout.setExpandRatio(chart, 1);
+					BeaconMetrics.UI_PROXIMITY_SELECT_SECONDS.observeSince(start);
+
+					proximityChart = chart;
+					proximityChartBeacon = beaconName;
+					updateLiveMode();
 				}
 				catch (Exception e) {
 				  Notification.show(
@@ -146,4 +196,37 @@ public class BeaconProximityGraph extends UI implements Serializable {
 			}
 		});
 	}
+
+	/**
+	 * Deliver the IPC events received in this round trip, at most one per
+	 * topic, before the response is written
+	 */
+	@Override
+	public void beforeClientResponse(boolean initial) {
+
+		super.beforeClientResponse(initial);
+		subscriptions.flush();
+	}
+
+	@Override
+	public void detach() {
+
+		super.detach();
+		liveUpdater.setEvent(null, 0);
+	}
+
+	/**
+	 * Follow the selected event while live mode is on and a chart is open
+	 */
+	private void updateLiveMode() {
+
+		if (proximityChart == null ||
+			!Boolean.TRUE.equals(liveCheckBox.getValue())) {
+
+			liveUpdater.setEvent(null, 0);
+		}
+		else {
+			liveUpdater.setEvent(selectedEvent, selectedEventKey.getResolution());
+		}
+	}
 }
@@ -5,15 +5,28 @@ import java.io.Serializable;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.portlet.PortletRequest;
 import javax.portlet.PortletSession;
 
+import com.liferay.beaconexample.util.BeaconEventDataKey;
+import com.liferay.beaconexample.util.BeaconEventDataListener;
+import com.liferay.beaconexample.util.BeaconEventLoader;
+import com.liferay.beaconexample.util.BeaconEventMetadata;
+import com.liferay.beaconexample.util.BeaconEventUpdate;
 import com.liferay.beaconexample.util.BeaconExpandoDataUtil;
+import com.liferay.beaconexample.util.BeaconMetrics;
+import com.liferay.beaconexample.util.PingSeries;
+import com.liferay.beaconexample.util.PurgeProgressListener;
 import com.liferay.portal.kernel.exception.SystemException;
 import com.liferay.portal.kernel.util.Validator;
 import com.liferay.portal.util.PortalUtil;
 import com.vaadin.addon.charts.Chart;
+import com.vaadin.addon.charts.ChartSelectionEvent;
+import com.vaadin.addon.charts.ChartSelectionListener;
 import com.vaadin.addon.charts.PointClickEvent;
 import com.vaadin.addon.charts.PointClickListener;
 import com.vaadin.addon.ipcforliferay.LiferayIPC;
@@ -22,7 +35,6 @@ import com.vaadin.addon.ipcforliferay.event.LiferayIPCEventListener;
 import com.vaadin.annotations.PreserveOnRefresh;
 import com.vaadin.annotations.Theme;
 import com.vaadin.annotations.Widgetset;
-import com.vaadin.data.Container;
 import com.vaadin.data.Property.ValueChangeEvent;
 import com.vaadin.data.Property.ValueChangeListener;
 import com.vaadin.server.VaadinPortletService;
@@ -30,6 +42,7 @@ import com.vaadin.server.VaadinRequest;
 import com.vaadin.ui.Button;
 import com.vaadin.ui.Button.ClickEvent;
 import com.vaadin.ui.Button.ClickListener;
+import com.vaadin.ui.CheckBox;
 import com.vaadin.ui.HorizontalLayout;
 import com.vaadin.ui.NativeSelect;
 import com.vaadin.ui.Notification;
@@ -56,8 +69,26 @@ public class BeaconRegionGraph extends UI implements Serializable {
 	private VerticalLayout layout = new VerticalLayout();
 	private HorizontalLayout chartLayout = new HorizontalLayout();
 	private LiferayIPC ipc;
+	private IPCSubscriptions subscriptions;
 	private long companyId;
+	private final BackgroundTasks backgroundTasks = new BackgroundTasks(this);
 	private final NativeSelect ls = new NativeSelect("Event");
+	private final ProgressBar loadProgressBar = new ProgressBar();
+	private transient EventLoad currentLoad;
+	private final CheckBox liveCheckBox = new CheckBox("Live updates");
+	private Chart regionChart;
+	private BeaconEventDataKey regionChartKey;
+	private long regionChartFirstTime;
+	private long regionChartLastTime;
+	private boolean regionChartDownsampled;
+
+	// the detail series of a zoomed in range, shown instead of the whole event
+	private boolean regionChartDetail;
+	private long detailFromTime;
+	private long detailToTime;
+	private int zoomCount;
+	private final Button resetZoomButton = new Button("Show whole event");
+	private LiveChartUpdater liveUpdater;
 	
 	@Override
 	protected void init(VaadinRequest request) {
@@ -68,11 +99,22 @@ public class BeaconRegionGraph extends UI implements Serializable {
 
 		ipc = new LiferayIPC();
 		ipc.extend(this);
+		subscriptions = new IPCSubscriptions(this, ipc);
+
+		liveUpdater = new LiveChartUpdater(this, backgroundTasks, companyId) {
+
+			@Override
+			protected void updateChart(BeaconEventUpdate update) {
+
+				BeaconExpandoDataUtil.updateChart(
+					regionChart, update.getRegionCounts(), update.getFromIndex());
+			}
+		};
 
 		// build ui
 		List<String> allEvents;
 		try {
-			allEvents = BeaconExpandoDataUtil.getAllEvents();
+			allEvents = BeaconExpandoDataUtil.getAllEvents(companyId);
 		}
 		catch (SystemException e) {
 			Notification.show(
@@ -81,117 +123,64 @@ public class BeaconRegionGraph extends UI implements Serializable {
 		}
 
 		layout.addComponent(ls);
+		layout.addComponent(liveCheckBox);
+		layout.addComponent(resetZoomButton);
 		layout.addComponent(chartLayout);
 
 		if (Validator.isNotNull(allEvents) && allEvents.size() > 0) {
 			ls.addItems(allEvents.toArray());
 		}
-		
-		// add listener to show new graph
-		ls.addValueChangeListener(new ValueChangeListener() {
-
-				@Override
-				public void valueChange(ValueChangeEvent evt) {
-
-					if (ls.getValue() == null) {
-						return;
-					}
 
-					String event = ls.getValue().toString();
-					Map<String, Container> regionChartData;
-					Map<String, Map<String, Container>> beaconChartData;
-					final Date firstDate;
-					final Date lastDate;
+		// in live mode, new pings are added to the open chart as they arrive
+		liveCheckBox.addValueChangeListener(new ValueChangeListener() {
 
-					try {
-						regionChartData =
-							BeaconExpandoDataUtil.getRegionChartDataForEvent(event, companyId);
-						beaconChartData =
-							BeaconExpandoDataUtil.getBeaconChartDataForBeacons(
-								event, companyId);
-						firstDate =
-							BeaconExpandoDataUtil.getFirstDateForEvent(event, companyId);
-						lastDate =
-							BeaconExpandoDataUtil.getLastDateForEvent(event, companyId);
-
-						// set big data into session for use by other portlets
-						PortletSession ps = VaadinPortletService.getCurrentPortletRequest()
-								.getPortletSession();
-
-						ps.setAttribute(
-							BeaconExpandoDataUtil.IPC_REGION_CHART_DATA, regionChartData,
-							PortletSession.APPLICATION_SCOPE);
-						ps.setAttribute(
-							BeaconExpandoDataUtil.IPC_REGION_FIRST_DATE, firstDate,
-							PortletSession.APPLICATION_SCOPE);
-						ps.setAttribute(
-							BeaconExpandoDataUtil.IPC_BEACON_CHART_DATA, beaconChartData,
-							PortletSession.APPLICATION_SCOPE);
-
-						ipc.sendEvent(BeaconExpandoDataUtil.IPC_SELECTED_EVENT, event);
-
-					}
-					catch (Exception e) {
-						Notification.show(
-							"Error", e.getLocalizedMessage(),
-							Notification.Type.WARNING_MESSAGE);
-						e.printStackTrace();
-						return;
-					}
+			@Override
+			public void valueChange(ValueChangeEvent evt) {
 
-					// Now make the Vaadin Chart
+				updateLiveMode();
+			}
+		});
 
-					final Chart chart =
-						BeaconExpandoDataUtil.getRegionChartForEvent(
-							regionChartData, firstDate);
+		resetZoomButton.setVisible(false);
+		resetZoomButton.addClickListener(new ClickListener() {
 
-					chart.addPointClickListener(new PointClickListener() {
+			@Override
+			public void buttonClick(ClickEvent event) {
 
-						@Override
-						public void onClick(PointClickEvent evt) {
+				resetRegionChart();
+			}
+		});
 
-							ipc.sendEvent(
-								BeaconExpandoDataUtil.IPC_SELECTED_REGION,
-								evt.getSeries().getName());
-						}
-					});
+		// zoom in on the time selected in the BeaconPingTable portlet
+		subscriptions.subscribe(
+			BeaconExpandoDataUtil.IPC_SELECTED_BUCKET,
+			new LiferayIPCEventListener() {
 
-					chartLayout.removeAllComponents();
-					chartLayout.addComponent(chart);
-					chartLayout.setExpandRatio(chart, 1);
+				@Override
+				public void eventReceived(LiferayIPCEvent event) {
 
-					ipc.addLiferayIPCEventListener(
-						BeaconExpandoDataUtil.IPC_SELECTED_BUCKET,
-						new LiferayIPCEventListener() {
+					zoomRegionChart(event.getData());
+				}
+			});
+		
+		// add listener to show new graph
+		ls.addValueChangeListener(new ValueChangeListener() {
 
-							@Override
-							public void eventReceived(LiferayIPCEvent event) {
+				@Override
+				public void valueChange(ValueChangeEvent evt) {
 
-								if (Validator.isNull(event.getData())) {
-									/* reset chart to original extents */
-									chart.getConfiguration().getxAxis().setExtremes(
-										firstDate.getTime(), lastDate.getTime());
-								}
-								else {
-									/* zoom in +/- 3 time periods */
-									long itemClicked = Long.parseLong(event.getData());
-									long before = itemClicked > 3 ? itemClicked - 3 : 0;
-									long after = before + 6;
-									chart.getConfiguration().getxAxis().setMin(
-										new Date(firstDate.getTime() + before *
-											BeaconExpandoDataUtil.FIVE_MINUTES_IN_MILLIS));
-									chart.getConfiguration().getxAxis().setMax(
-										new Date(firstDate.getTime() + after *
-											BeaconExpandoDataUtil.FIVE_MINUTES_IN_MILLIS));
+					if (ls.getValue() == null) {
+						return;
+					}
 
-								}
-								chart.drawChart(chart.getConfiguration());
-							}
-						});
+					loadEvent(ls.getValue().toString());
 				}
 
 			});
 
+		loadProgressBar.setIndeterminate(true);
+		loadProgressBar.setVisible(false);
+		layout.addComponent(loadProgressBar);
 
 		// couple of utility buttons to make and clear fake data
 		Button b = new Button("Make Fake Data", new ClickListener() {
@@ -209,16 +198,7 @@ public class BeaconRegionGraph extends UI implements Serializable {
 			
 			@Override
 			public void buttonClick(ClickEvent event) {
-				try {
-					BeaconExpandoDataUtil.clearFakeData(companyId);
-					ls.removeAllItems();
-					Notification.show("Cleared all data");
-				}
-				catch (Exception e) {
-					Notification.show(
-						"Error", e.getLocalizedMessage(), Notification.Type.WARNING_MESSAGE);
-					e.printStackTrace();
-				}
+				clearTestData();
 			}
 		});
 		
@@ -231,9 +211,73 @@ public class BeaconRegionGraph extends UI implements Serializable {
 
 	}
 	
+	private void clearTestData() {
+		// visit the server periodically to see when thread is done
+		backgroundTasks.start();
+
+		final ProgressBar progressBar = new ProgressBar();
+		progressBar.setCaption("Clearing all data...");
+		progressBar.setIndeterminate(true);
+		layout.addComponent(progressBar);
+		final UI ui = UI.getCurrent();
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					BeaconExpandoDataUtil.clearFakeData(companyId,
+							new PurgeProgressListener() {
+
+						@Override
+						public void onProgress(final String event,
+								final long scanned, final long total,
+								final long purged) {
+
+							ui.access(new Runnable() {
+
+								@Override
+								public void run() {
+									progressBar.setIndeterminate(false);
+									progressBar.setCaption("Clearing " + event
+											+ ": " + purged + " of " + total
+											+ " pings");
+									progressBar.setValue(total > 0 ?
+											(float) scanned / total : 1f);
+								}
+							});
+						}
+					});
+
+					ui.access(new Runnable() {
+
+						@Override
+						public void run() {
+							ls.removeAllItems();
+							Notification.show("Cleared all data");
+							layout.removeComponent(progressBar);
+							backgroundTasks.end();
+						}
+					});
+				} catch (final Exception e) {
+					ui.access(new Runnable() {
+
+						@Override
+						public void run() {
+							Notification.show("Error", e.getLocalizedMessage(),
+									Notification.Type.WARNING_MESSAGE);
+							layout.removeComponent(progressBar);
+							backgroundTasks.end();
+						}
+					});
+					e.printStackTrace();
+				}
+			}
+		}.start();
+
+	}
+
 	private void generateTestData() {
 		// visit the server periodically to see when thread is done
-		setPollInterval(1000);
+		backgroundTasks.start();
 
 		final ProgressBar progressBar = new ProgressBar();
 		progressBar
@@ -247,7 +291,7 @@ public class BeaconRegionGraph extends UI implements Serializable {
 				try {
 					BeaconExpandoDataUtil.makeFakeData(companyId);
 					final List<String> newEvents = BeaconExpandoDataUtil
-							.getAllEvents();
+							.getAllEvents(companyId);
 
 					ui.access(new Runnable() {
 
@@ -257,7 +301,7 @@ public class BeaconRegionGraph extends UI implements Serializable {
 							ls.addItems(newEvents.toArray());
 							Notification.show("Created fake data");
 							layout.removeComponent(progressBar);
-							setPollInterval(-1);
+							backgroundTasks.end();
 						}
 					});
 				} catch (final Exception e) {
@@ -268,7 +312,7 @@ public class BeaconRegionGraph extends UI implements Serializable {
 							Notification.show("Error", e.getLocalizedMessage(),
 									Notification.Type.WARNING_MESSAGE);
 							layout.removeComponent(progressBar);
-							setPollInterval(-1);
+							backgroundTasks.end();
 						}
 					});
 					e.printStackTrace();
@@ -277,4 +321,397 @@ public class BeaconRegionGraph extends UI implements Serializable {
 		}.start();
 
 	}
+
+	/**
+	 * Load the chart data of an event in the background, dropping the load of
+	 * a previously selected event
+	 * @param event The event name
+	 */
+	private void loadEvent(String event) {
+
+		if (currentLoad != null) {
+			currentLoad.cancel();
+			currentLoad = null;
+			backgroundTasks.end();
+		}
+
+		PortletSession ps = VaadinPortletService.getCurrentPortletRequest()
+				.getPortletSession();
+
+		EventLoad load = new EventLoad(event, ps, UI.getCurrent());
+
+		try {
+			load.future = BeaconEventLoader.submit(load);
+		}
+		catch (RejectedExecutionException e) {
+			Notification.show(
+				"Too many events are loading, please try again",
+				Notification.Type.WARNING_MESSAGE);
+			return;
+		}
+
+		currentLoad = load;
+		backgroundTasks.start();
+		loadProgressBar.setCaption("Loading " + event + " regions...");
+		loadProgressBar.setVisible(true);
+	}
+
+	private void finishLoad(EventLoad load) {
+
+		if (currentLoad == load) {
+			currentLoad = null;
+			loadProgressBar.setVisible(false);
+			backgroundTasks.end();
+		}
+	}
+
+	/**
+	 * Deliver the IPC events received in this round trip, at most one per
+	 * topic, before the response is written
+	 */
+	@Override
+	public void beforeClientResponse(boolean initial) {
+
+		super.beforeClientResponse(initial);
+		subscriptions.flush();
+	}
+
+	@Override
+	public void detach() {
+
+		super.detach();
+		liveUpdater.setEvent(null, 0);
+	}
+
+	/**
+	 * Follow the event of the open chart while live mode is on; a chart
+	 * showing the detail of a zoomed in range isn't updated
+	 */
+	private void updateLiveMode() {
+
+		if (regionChartKey == null || regionChartDetail ||
+			!Boolean.TRUE.equals(liveCheckBox.getValue())) {
+
+			liveUpdater.setEvent(null, 0);
+		}
+		else {
+			liveUpdater.setEvent(
+				regionChartKey.getEvent(), regionChartKey.getResolution());
+		}
+	}
+
+	/**
+	 * Show the region chart of the selected event
+	 */
+	private void showRegionChart(
+		BeaconEventDataKey key, Map<String, PingSeries> data, Date firstDate,
+		Date lastDate) {
+
+		Chart chart = BeaconExpandoDataUtil.getRegionChartForEvent(data);
+
+		regionChart = chart;
+		regionChartKey = key;
+		regionChartFirstTime = firstDate.getTime();
+		regionChartLastTime = lastDate.getTime();
+		regionChartDownsampled = BeaconExpandoDataUtil.isDownsampled(data);
+		regionChartDetail = false;
+		zoomCount++;
+		resetZoomButton.setVisible(false);
+		updateLiveMode();
+
+		// the chart may be downsampled, so a selected range is zoomed into on
+		// the server, which can load the range's full counts
+		chart.addChartSelectionListener(new ChartSelectionListener() {
+
+			@Override
+			public void onSelection(ChartSelectionEvent evt) {
+
+				zoomRegionChart(
+					(long) evt.getSelectionStart(), (long) evt.getSelectionEnd());
+			}
+		});
+
+		chart.addPointClickListener(new PointClickListener() {
+
+			@Override
+			public void onClick(PointClickEvent evt) {
+
+				ipc.sendEvent(
+					BeaconExpandoDataUtil.IPC_SELECTED_REGION,
+					evt.getSeries().getName());
+			}
+		});
+
+		chartLayout.removeAllComponents();
+		chartLayout.addComponent(chart);
+		chartLayout.setExpandRatio(chart, 1);
+	}
+
+	/**
+	 * Zoom the region chart in on +/- 3 time periods around a time, or back
+	 * out to the whole event
+	 * @param time The time in ms, or empty to zoom out
+	 */
+	private void zoomRegionChart(String time) {
+
+		if (regionChart == null) {
+			return;
+		}
+
+		if (Validator.isNull(time)) {
+			resetRegionChart();
+			return;
+		}
+
+		long interval = regionChartKey.getResolution();
+		long fromTime = Long.parseLong(time) - 3 * interval;
+
+		zoomRegionChart(fromTime, fromTime + 7 * interval);
+	}
+
+	/**
+	 * Zoom the region chart in on a time range. Only the new axis extremes
+	 * are sent to the browser, so zooming takes the same time however many
+	 * points the chart has. If the chart's series are too coarse for the
+	 * range, or don't cover it, the range's counts are then loaded in the
+	 * background at the finest resolution that fits, and replace them.
+	 * @param fromTime The start of the range, inclusive
+	 * @param toTime The end of the range, exclusive
+	 */
+	private void zoomRegionChart(long fromTime, long toTime) {
+
+		BeaconExpandoDataUtil.setTimeExtremes(regionChart, fromTime, toTime);
+		resetZoomButton.setVisible(true);
+
+		long resolution = BeaconExpandoDataUtil.getResolution(toTime - fromTime);
+
+		boolean covered;
+		if (regionChartDetail) {
+			covered = fromTime >= detailFromTime && toTime <= detailToTime &&
+				resolution >= BeaconExpandoDataUtil.getResolution(
+					detailToTime - detailFromTime);
+		}
+		else {
+			covered = !regionChartDownsampled &&
+				resolution >= regionChartKey.getResolution();
+		}
+
+		zoomCount++;
+		if (!covered) {
+			loadZoomDetail(fromTime, toTime);
+		}
+	}
+
+	/**
+	 * Load the counts of a zoomed in range on a {@link BeaconEventLoader}
+	 * thread, and show them unless the chart has been zoomed again since
+	 */
+	private void loadZoomDetail(final long fromTime, final long toTime) {
+
+		final int zoom = zoomCount;
+		final String event = regionChartKey.getEvent();
+		final UI ui = UI.getCurrent();
+
+		backgroundTasks.start();
+		try {
+			BeaconEventLoader.submit(new Runnable() {
+
+				@Override
+				public void run() {
+
+					try {
+						final Map<String, PingSeries> detail =
+							BeaconExpandoDataUtil.getRegionChartDataForEvent(
+								event, companyId, new Date(fromTime),
+								new Date(toTime));
+
+						ui.access(new Runnable() {
+
+							@Override
+							public void run() {
+								backgroundTasks.end();
+								if (zoom != zoomCount) {
+									return;
+								}
+								BeaconExpandoDataUtil.setRegionChartSeries(
+									regionChart, detail);
+								regionChartDetail = true;
+								detailFromTime = fromTime;
+								detailToTime = toTime;
+								updateLiveMode();
+							}
+						});
+					}
+					catch (final Exception e) {
+						ui.access(new Runnable() {
+
+							@Override
+							public void run() {
+								backgroundTasks.end();
+								if (zoom != zoomCount) {
+									return;
+								}
+								Notification.show("Error", e.getLocalizedMessage(),
+										Notification.Type.WARNING_MESSAGE);
+							}
+						});
+						e.printStackTrace();
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			// the chart keeps its current series, just zoomed in
+			backgroundTasks.end();
+		}
+	}
+
+	/**
+	 * Show the whole event again. Only the axis extremes change, unless the
+	 * chart shows the detail of a range, in which case the event's series are
+	 * restored, with any pings that arrived while zoomed in.
+	 */
+	private void resetRegionChart() {
+
+		zoomCount++;
+		resetZoomButton.setVisible(false);
+
+		if (!regionChartDetail) {
+			BeaconExpandoDataUtil.setTimeExtremes(
+				regionChart, regionChartFirstTime, regionChartLastTime);
+			return;
+		}
+
+		try {
+			BeaconExpandoDataUtil.setRegionChartSeries(
+				regionChart,
+				BeaconExpandoDataUtil.getChartData(
+					regionChartKey).getRegionChartData());
+			regionChartDetail = false;
+			updateLiveMode();
+		}
+		catch (Exception e) {
+			Notification.show(
+				"Error", e.getLocalizedMessage(), Notification.Type.WARNING_MESSAGE);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Loads the chart data of one event on a {@link BeaconEventLoader} thread.
+	 * The region chart is shown as soon as the region series are ready, and
+	 * the other portlets are told about the event once its beacons are counted
+	 * too. Every UI update checks, under the session lock, that the load
+	 * hasn't been superseded by a newer selection.
+	 */
+	private class EventLoad implements Runnable, BeaconEventDataListener {
+
+		private final String event;
+		private final PortletSession ps;
+		private final UI ui;
+		private volatile BeaconEventDataKey key;
+		private volatile boolean cancelled;
+		private Future<?> future;
+
+		// when the event was selected, and whether its chart has been shown
+		private final long startNanos = System.nanoTime();
+		private boolean charted;
+
+		private EventLoad(String event, PortletSession ps, UI ui) {
+
+			this.event = event;
+			this.ps = ps;
+			this.ui = ui;
+		}
+
+		private void cancel() {
+
+			cancelled = true;
+			future.cancel(false);
+		}
+
+		@Override
+		public boolean isCancelled() {
+
+			return cancelled;
+		}
+
+		@Override
+		public void onRegionChartData(
+			final Map<String, PingSeries> regionChartData, final Date firstDate,
+			final Date lastDate) {
+
+			ui.access(new Runnable() {
+
+				@Override
+				public void run() {
+					if (cancelled) {
+						return;
+					}
+
+					// the data is shared node-wide, other portlets only need
+					// the key to find it
+					ps.setAttribute(
+						BeaconExpandoDataUtil.IPC_EVENT_DATA_KEY, key,
+						PortletSession.APPLICATION_SCOPE);
+
+					showRegionChart(key, regionChartData, firstDate, lastDate);
+					if (!charted) {
+						charted = true;
+						BeaconMetrics.UI_REGION_SELECT_SECONDS.observeSince(
+							startNanos);
+					}
+					loadProgressBar.setCaption("Loading " + event + " beacons...");
+				}
+			});
+		}
+
+		@Override
+		public void run() {
+
+			final EventLoad load = this;
+			try {
+				// chart the whole event at the resolution that fits it
+				BeaconEventMetadata metadata =
+					BeaconExpandoDataUtil.getEventMetadata(companyId, event);
+				key = new BeaconEventDataKey(
+					companyId, event,
+					BeaconExpandoDataUtil.getResolution(
+						metadata.getLastTime() - metadata.getFirstTime()));
+
+				// one scan of the event feeds both the region and beacon data
+				BeaconExpandoDataUtil.getChartData(key, this);
+
+				ui.access(new Runnable() {
+
+					@Override
+					public void run() {
+						if (cancelled) {
+							return;
+						}
+						ipc.sendEvent(BeaconExpandoDataUtil.IPC_SELECTED_EVENT, event);
+						finishLoad(load);
+					}
+				});
+			}
+			catch (CancellationException e) {
+				// superseded by a newer selection
+			}
+			catch (final Exception e) {
+				ui.access(new Runnable() {
+
+					@Override
+					public void run() {
+						if (cancelled) {
+							return;
+						}
+						Notification.show("Error", e.getLocalizedMessage(),
+								Notification.Type.WARNING_MESSAGE);
+						finishLoad(load);
+					}
+				});
+				e.printStackTrace();
+			}
+		}
+	}
 }
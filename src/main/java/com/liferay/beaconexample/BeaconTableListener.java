@@ -0,0 +1,62 @@
+
+package com.liferay.beaconexample;
+
+import java.util.concurrent.Callable;
+
+import com.liferay.beaconexample.util.BeaconExpandoDataUtil;
+import com.liferay.beaconexample.util.BeaconIngestService;
+import com.liferay.beaconexample.util.EventCatalog;
+import com.liferay.beaconexample.util.EventInvalidator;
+import com.liferay.portal.kernel.transaction.TransactionCommitCallbackRegistryUtil;
+import com.liferay.portal.model.BaseModelListener;
+import com.liferay.portlet.expando.model.ExpandoTable;
+
+/**
+ * Invalidates the {@link EventCatalog} of a company, and the table the
+ * {@link BeaconIngestService} resolved for the event, whenever one of its
+ * beacon data tables is added or deleted, by this plugin or anything else on
+ * this node, and tells the other nodes of the cluster through the
+ * {@link EventInvalidator}. Registered by the plugin's hook, in
+ * portal.properties. The catalog is dropped once the transaction commits, so
+ * it can't be read again before the change is visible.
+ * 
+ * @author James Falkner
+ *
+ */
+public class BeaconTableListener extends BaseModelListener<ExpandoTable> {
+
+	@Override
+	public void onAfterCreate(ExpandoTable table) {
+
+		catalogChanged(table);
+	}
+
+	@Override
+	public void onAfterRemove(ExpandoTable table) {
+
+		catalogChanged(table);
+	}
+
+	private void catalogChanged(ExpandoTable table) {
+
+		if (!BeaconExpandoDataUtil.BEACON_DATA_CLASS.equals(table.getClassName())) {
+			return;
+		}
+
+		final long companyId = table.getCompanyId();
+		final String event = table.getName();
+
+		TransactionCommitCallbackRegistryUtil.registerCallback(
+			new Callable<Void>() {
+
+				@Override
+				public Void call() {
+
+					EventCatalog.invalidate(companyId);
+					BeaconIngestService.removeEventTable(companyId, event);
+					EventInvalidator.catalogChanged(companyId, event);
+					return null;
+				}
+			});
+	}
+}
@@ -0,0 +1,85 @@
+
+package com.liferay.beaconexample;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.vaadin.addon.ipcforliferay.LiferayIPC;
+import com.vaadin.addon.ipcforliferay.event.LiferayIPCEvent;
+import com.vaadin.addon.ipcforliferay.event.LiferayIPCEventListener;
+import com.vaadin.ui.UI;
+
+/**
+ * The Liferay IPC subscriptions of one UI. Each topic gets a single listener
+ * on the UI's {@link LiferayIPC}, registered on the first subscription, and
+ * subscribing again only swaps the subscriber it delivers to. Events aren't
+ * delivered as they arrive: they're held until the UI is about to respond,
+ * and then only the latest event of each topic is delivered, so a burst of
+ * events causes a single redraw. The UI must call {@link #flush()} from its
+ * <code>beforeClientResponse</code>.
+ * 
+ * @author James Falkner
+ *
+ */
+@SuppressWarnings("serial")
+public class IPCSubscriptions implements Serializable {
+
+	private final UI ui;
+	private final LiferayIPC ipc;
+	private final Map<String, LiferayIPCEventListener> subscribers =
+		new HashMap<String, LiferayIPCEventListener>();
+	private final Map<String, LiferayIPCEvent> pendingEvents =
+		new LinkedHashMap<String, LiferayIPCEvent>();
+
+	public IPCSubscriptions(UI ui, LiferayIPC ipc) {
+
+		this.ui = ui;
+		this.ipc = ipc;
+	}
+
+	/**
+	 * Deliver the events of a topic to a subscriber, instead of any previous
+	 * subscriber of the topic
+	 * @param topic The IPC event ID
+	 * @param subscriber The subscriber
+	 */
+	public void subscribe(final String topic, LiferayIPCEventListener subscriber) {
+
+		if (!subscribers.containsKey(topic)) {
+			ipc.addLiferayIPCEventListener(topic, new LiferayIPCEventListener() {
+
+				@Override
+				public void eventReceived(LiferayIPCEvent event) {
+
+					// an event that's still pending is superseded
+					pendingEvents.remove(topic);
+					pendingEvents.put(topic, event);
+					ui.markAsDirty();
+				}
+			});
+		}
+		subscribers.put(topic, subscriber);
+	}
+
+	/**
+	 * Deliver the pending events, in the order their topics last received
+	 * one; called with the UI's lock held
+	 */
+	public void flush() {
+
+		while (!pendingEvents.isEmpty()) {
+			Iterator<Map.Entry<String, LiferayIPCEvent>> iterator =
+				pendingEvents.entrySet().iterator();
+			Map.Entry<String, LiferayIPCEvent> entry = iterator.next();
+			iterator.remove();
+
+			LiferayIPCEventListener subscriber = subscribers.get(entry.getKey());
+			if (subscriber != null) {
+				subscriber.eventReceived(entry.getValue());
+			}
+		}
+	}
+}
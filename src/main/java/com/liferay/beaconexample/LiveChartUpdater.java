@@ -0,0 +1,90 @@
+
+package com.liferay.beaconexample;
+
+import java.io.Serializable;
+
+import com.liferay.beaconexample.util.BeaconEventBroadcaster;
+import com.liferay.beaconexample.util.BeaconEventUpdate;
+import com.liferay.beaconexample.util.BeaconEventUpdateListener;
+import com.liferay.portal.kernel.util.Validator;
+import com.vaadin.ui.UI;
+import com.vaadin.ui.UIDetachedException;
+
+/**
+ * Keeps an open chart of a UI up to date with new pings, by registering with
+ * the {@link BeaconEventBroadcaster} for the chart's event. Updates at the
+ * chart's resolution are applied under the UI's lock, and the UI polls while
+ * an event is followed so they reach the browser.
+ * 
+ * @author James Falkner
+ *
+ */
+@SuppressWarnings("serial")
+public abstract class LiveChartUpdater
+	implements BeaconEventUpdateListener, Serializable {
+
+	private final UI ui;
+	private final BackgroundTasks backgroundTasks;
+	private final long companyId;
+	private String event;
+	private long resolution;
+
+	public LiveChartUpdater(
+		UI ui, BackgroundTasks backgroundTasks, long companyId) {
+
+		this.ui = ui;
+		this.backgroundTasks = backgroundTasks;
+		this.companyId = companyId;
+	}
+
+	/**
+	 * Follow an event
+	 * @param event The event name, or null to stop following updates
+	 * @param resolution The time between the points of the chart
+	 */
+	public void setEvent(String event, long resolution) {
+
+		this.resolution = resolution;
+		if (Validator.equals(event, this.event)) {
+			return;
+		}
+		if (this.event != null) {
+			BeaconEventBroadcaster.unregister(companyId, this.event, this);
+			backgroundTasks.end();
+		}
+		this.event = event;
+		if (event != null) {
+			BeaconEventBroadcaster.register(companyId, event, this);
+			backgroundTasks.start();
+		}
+	}
+
+	@Override
+	public void onUpdate(final BeaconEventUpdate update) {
+
+		try {
+			ui.access(new Runnable() {
+
+				@Override
+				public void run() {
+					if (update.getEvent().equals(event) &&
+						update.getPointInterval() == resolution) {
+
+						updateChart(update);
+					}
+				}
+			});
+		}
+		catch (UIDetachedException e) {
+			// closed while the update was on its way
+		}
+	}
+
+	/**
+	 * Apply an update of the followed event to the chart; called with the
+	 * UI's lock held
+	 * @param update The changed points
+	 */
+	protected abstract void updateChart(BeaconEventUpdate update);
+
+}
@@ -0,0 +1,418 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates synthetic beacon pings for demos and load tests. The size of the
+ * dataset (events, duration, pings per bucket, number of regions and beacons)
+ * is configurable, and generation is reproducible: every (event, partition)
+ * pair draws from its own Random derived from the seed, so the same settings
+ * produce the same pings regardless of the number of threads. The number of
+ * partitions is one of those settings, and defaults to a constant rather
+ * than to the number of processors, so a dataset is the same on every
+ * machine. So does the start time, which defaults to a fixed date.
+ * <p>
+ * Each event's buckets are split into partitions that are generated in
+ * parallel, and pings are handed to a {@link PingSink} in batches. The
+ * batches of an event are written in time order, so the rollups and
+ * columnar store of an event being generated see its pings as they would
+ * arrive live: a partition's pings are held until the earlier partitions of
+ * its event have been written.
+ * 
+ * @author James Falkner
+ */
+public class BeaconDataGenerator {
+
+	/**
+	 * Receives the generated pings, one batch at a time. Implementations must
+	 * be thread-safe, batches of the same event can arrive concurrently.
+	 */
+	public interface PingSink {
+
+		public void write(String event, List<Ping> pings)
+			throws Exception;
+	}
+
+	private static final String[] DEMO_EVENTS = new String[] {
+		"Benelux Solutions Forum", "France Symposium", "North America Symposium",
+		"DevCon Frankfurt"
+	};
+
+	private static final String[] DEMO_REGIONS = new String[] {
+		"Venue", "Registration", "Partners", "Grand Ballroom", "Bar"
+	};
+
+	private static final String[] DEMO_BEACONS = new String[] {
+		"Componence", "GFI", "Smile", "iProfs", "SQLI", "CGI", "ORANGE",
+		"Mystery Guest"
+	};
+
+	private static final String[] PROXIMITIES = new String[] {
+		"near", "far", "immediate"
+	};
+
+	// Enough partitions to keep the threads of most machines busy
+	private static final int DEFAULT_PARTITIONS = 16;
+
+	// 2014-07-01 00:00 UTC
+	private static final long DEFAULT_START_TIME = 1404172800000L;
+
+	private static final Comparator<Ping> TIME_COMPARATOR =
+		new Comparator<Ping>() {
+
+			@Override
+			public int compare(Ping ping1, Ping ping2) {
+
+				long time1 = ping1.getTime();
+				long time2 = ping2.getTime();
+				return time1 < time2 ? -1 : (time1 == time2 ? 0 : 1);
+			}
+		};
+
+	/**
+	 * @return A generator that makes the hard-coded demo events: four events of
+	 *         70 five minute buckets, with traffic surges during the day
+	 */
+	public static BeaconDataGenerator getDemoGenerator() {
+
+		BeaconDataGenerator generator = new BeaconDataGenerator();
+		generator.setEventNames(DEMO_EVENTS);
+		generator.setBucketCount(70);
+		generator.setPingsPerBucket(50);
+		generator.setRegionCount(DEMO_REGIONS.length);
+		generator.setBeaconCount(DEMO_BEACONS.length);
+		generator.setDemoShape(true);
+		generator.setStartTime(System.currentTimeMillis());
+		generator.setSeed(System.currentTimeMillis());
+		return generator;
+	}
+
+	/**
+	 * @param companyId The company ID in which the data should be made
+	 * @return A sink that writes pings through {@link BeaconIngestService}
+	 */
+	public static PingSink getIngestSink(final long companyId) {
+
+		return new PingSink() {
+
+			@Override
+			public void write(String event, List<Ping> pings)
+				throws Exception {
+
+				BeaconIngestService.ingest(companyId, event, pings);
+			}
+		};
+	}
+
+	private String[] eventNames;
+	private int eventCount = 1;
+	private int bucketCount = 70;
+	private long bucketMillis = BeaconExpandoDataUtil.FIVE_MINUTES_IN_MILLIS;
+	private int pingsPerBucket = 50;
+	private int regionCount = DEMO_REGIONS.length;
+	private int beaconCount = DEMO_BEACONS.length;
+	private long startTime = DEFAULT_START_TIME;
+	private long seed;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int partitions = DEFAULT_PARTITIONS;
+	private int batchSize = 500;
+	private boolean demoShape;
+
+	/**
+	 * Generate all pings and write them to the sink
+	 * 
+	 * @param sink Where to write the pings
+	 * @return The number of pings generated
+	 * @throws Exception if the sink fails
+	 */
+	public long generate(final PingSink sink)
+		throws Exception {
+
+		List<String> events = getEvents();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Long>> futures = new ArrayList<Future<Long>>();
+			for (int e = 0; e < events.size(); e++) {
+				final String event = events.get(e);
+				final int eventIndex = e;
+				int partitionCount = Math.max(1, Math.min(partitions, bucketCount));
+				Future<Long> previous = null;
+				for (int p = 0; p < partitionCount; p++) {
+					final int fromBucket = bucketCount * p / partitionCount;
+					final int toBucket = bucketCount * (p + 1) / partitionCount;
+					final Random random = new Random(seed * 31 + eventIndex * 1009 + p);
+					final Future<Long> previousPartition = previous;
+
+					// the previous partition was submitted first, so it's
+					// running or done by the time this one waits for it
+					previous = executor.submit(new Callable<Long>() {
+
+						@Override
+						public Long call()
+							throws Exception {
+
+							List<List<Ping>> batches =
+								generate(random, fromBucket, toBucket);
+							if (previousPartition != null) {
+								previousPartition.get();
+							}
+							return write(sink, event, batches);
+						}
+					});
+					futures.add(previous);
+				}
+			}
+
+			long total = 0;
+			for (Future<Long> future : futures) {
+				try {
+					total += future.get();
+				}
+				catch (ExecutionException ee) {
+					Throwable cause = ee.getCause();
+					if (cause instanceof Exception) {
+						throw (Exception) cause;
+					}
+					throw ee;
+				}
+			}
+			return total;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Generate the pings of a range of buckets, in time order
+	 * @return The pings, in batches
+	 */
+	private List<List<Ping>> generate(
+		Random random, int fromBucket, int toBucket) {
+
+		String[] regions = getNames(DEMO_REGIONS, "Region ", regionCount);
+		String[] beacons = getNames(DEMO_BEACONS, "Beacon ", beaconCount);
+
+		List<List<Ping>> batches = new ArrayList<List<Ping>>();
+		List<Ping> batch = new ArrayList<Ping>(batchSize);
+
+		for (int i = fromBucket; i < toBucket; i++) {
+			int people = (int) Math.floor(random.nextDouble() * pingsPerBucket * 2);
+			if (demoShape) {
+				people = (int) (people * getSurge(i));
+			}
+
+			List<Ping> pings = new ArrayList<Ping>(people);
+			long bucketStart = startTime + i * bucketMillis;
+			for (int p = 0; p < people; p++) {
+				long time = bucketStart + (long) (random.nextDouble() * bucketMillis);
+				Ping ping = new Ping(time, Long.toHexString(random.nextLong()));
+
+				int numRegions = random.nextInt(regions.length + 1);
+				for (int r = 0; r < numRegions; r++) {
+					ping.addRegion(regions[random.nextInt(regions.length)]);
+				}
+				if (demoShape) {
+					addDemoHotSpots(ping, regions, i);
+				}
+
+				int numBeacons = random.nextInt(beacons.length + 1);
+				for (int b = 0; b < numBeacons; b++) {
+					ping.addBeacon(
+						beacons[random.nextInt(beacons.length)],
+						PROXIMITIES[random.nextInt(PROXIMITIES.length)]);
+				}
+
+				pings.add(ping);
+			}
+
+			Collections.sort(pings, TIME_COMPARATOR);
+			for (Ping ping : pings) {
+				batch.add(ping);
+				if (batch.size() == batchSize) {
+					batches.add(batch);
+					batch = new ArrayList<Ping>(batchSize);
+				}
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			batches.add(batch);
+		}
+		return batches;
+	}
+
+	private static long write(
+		PingSink sink, String event, List<List<Ping>> batches)
+		throws Exception {
+
+		long total = 0;
+		for (List<Ping> batch : batches) {
+			sink.write(event, batch);
+			total += batch.size();
+		}
+		return total;
+	}
+
+	/**
+	 * The traffic surges of the original demo data, scaled to the duration
+	 */
+	private double getSurge(int bucket) {
+
+		double pos = bucket * 70.0 / bucketCount;
+		if (pos > 23 && pos < 30)
+			return 4;
+		if (pos > 50 && pos < 60)
+			return 3;
+		if (pos > 40 && pos < 42)
+			return 2;
+		if (pos > 60 && pos < 64)
+			return 3;
+		return 1;
+	}
+
+	/**
+	 * A busy Grand Ballroom early on and busy Partners in the afternoon, like
+	 * the original demo data
+	 */
+	private void addDemoHotSpots(Ping ping, String[] regions, int bucket) {
+
+		double pos = bucket * 70.0 / bucketCount;
+		if (pos < 15 && regions.length > 3) {
+			for (int e = 0; e < 30; e++) {
+				ping.addRegion(regions[3]);
+			}
+		}
+		if (pos > 40 && pos < 55 && regions.length > 2) {
+			for (int e = 0; e < 250; e++) {
+				ping.addRegion(regions[2]);
+			}
+		}
+	}
+
+	private List<String> getEvents() {
+
+		List<String> events = new ArrayList<String>();
+		if (eventNames != null) {
+			for (String eventName : eventNames) {
+				events.add(eventName);
+			}
+		}
+		else {
+			for (int e = 0; e < eventCount; e++) {
+				events.add("Event " + (e + 1));
+			}
+		}
+		return events;
+	}
+
+	private static String[] getNames(String[] demoNames, String prefix, int count) {
+
+		String[] names = new String[count];
+		for (int i = 0; i < count; i++) {
+			names[i] = i < demoNames.length ? demoNames[i] : prefix + (i + 1);
+		}
+		return names;
+	}
+
+	/**
+	 * @param eventNames The names of the events to make; overrides the event
+	 *          count
+	 */
+	public void setEventNames(String[] eventNames) {
+
+		this.eventNames = eventNames;
+	}
+
+	/**
+	 * @param eventCount The number of events to make, named "Event 1" etc.
+	 */
+	public void setEventCount(int eventCount) {
+
+		this.eventCount = eventCount;
+	}
+
+	/**
+	 * @param bucketCount The duration of each event, in buckets
+	 */
+	public void setBucketCount(int bucketCount) {
+
+		this.bucketCount = bucketCount;
+	}
+
+	public void setBucketMillis(long bucketMillis) {
+
+		this.bucketMillis = bucketMillis;
+	}
+
+	/**
+	 * @param pingsPerBucket The average number of pings per bucket
+	 */
+	public void setPingsPerBucket(int pingsPerBucket) {
+
+		this.pingsPerBucket = pingsPerBucket;
+	}
+
+	public void setRegionCount(int regionCount) {
+
+		this.regionCount = regionCount;
+	}
+
+	public void setBeaconCount(int beaconCount) {
+
+		this.beaconCount = beaconCount;
+	}
+
+	/**
+	 * @param startTime The time of the first bucket of every event; defaults
+	 *          to 2014-07-01 00:00 UTC
+	 */
+	public void setStartTime(long startTime) {
+
+		this.startTime = startTime;
+	}
+
+	public void setSeed(long seed) {
+
+		this.seed = seed;
+	}
+
+	public void setThreads(int threads) {
+
+		this.threads = threads;
+	}
+
+	/**
+	 * @param partitions The number of bucket ranges each event is split into
+	 *          for parallel generation; changing it changes the pings
+	 */
+	public void setPartitions(int partitions) {
+
+		this.partitions = partitions;
+	}
+
+	public void setBatchSize(int batchSize) {
+
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param demoShape true to add the traffic surges and busy regions of the
+	 *          original demo data
+	 */
+	public void setDemoShape(boolean demoShape) {
+
+		this.demoShape = demoShape;
+	}
+}
@@ -0,0 +1,130 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+
+/**
+ * Sends the changed points of an event to the open charts of the event on
+ * this node. Updates are delivered on a single background thread, in the
+ * order the pings were written, so writers never wait on listeners.
+ * 
+ * @author James Falkner
+ */
+public class BeaconEventBroadcaster {
+
+	private static final ConcurrentMap<String, List<BeaconEventUpdateListener>> listeners =
+		new ConcurrentHashMap<String, List<BeaconEventUpdateListener>>();
+
+	private static final ExecutorService executor =
+		Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+
+				Thread thread = new Thread(runnable, "Beacon event broadcaster");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+	/**
+	 * Start sending the updates of an event to a listener
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @param listener The listener
+	 */
+	public static synchronized void register(
+		long companyId, String event, BeaconEventUpdateListener listener) {
+
+		String key = getKey(companyId, event);
+		List<BeaconEventUpdateListener> eventListeners = listeners.get(key);
+		if (eventListeners == null) {
+			eventListeners = new CopyOnWriteArrayList<BeaconEventUpdateListener>();
+			listeners.put(key, eventListeners);
+		}
+		eventListeners.add(listener);
+	}
+
+	public static synchronized void unregister(
+		long companyId, String event, BeaconEventUpdateListener listener) {
+
+		String key = getKey(companyId, event);
+		List<BeaconEventUpdateListener> eventListeners = listeners.get(key);
+		if (eventListeners != null) {
+			eventListeners.remove(listener);
+			if (eventListeners.isEmpty()) {
+				listeners.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @return true if anybody is listening to the event, so an update is
+	 *         worth building
+	 */
+	public static boolean hasListeners(long companyId, String event) {
+
+		return listeners.containsKey(getKey(companyId, event));
+	}
+
+	public static void broadcast(final BeaconEventUpdate update) {
+
+		final List<BeaconEventUpdateListener> eventListeners =
+			listeners.get(getKey(update.getCompanyId(), update.getEvent()));
+		if (eventListeners == null) {
+			return;
+		}
+
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+
+					for (BeaconEventUpdateListener listener : eventListeners) {
+						try {
+							listener.onUpdate(update);
+						}
+						catch (Exception e) {
+							_log.error(
+								"Unable to send an update of event " +
+									update.getEvent(), e);
+						}
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException ree) {
+
+			// the plugin is being undeployed, so the charts are going away
+		}
+	}
+
+	/**
+	 * Stop delivering updates when the plugin is undeployed
+	 */
+	public static void shutdown() {
+
+		executor.shutdownNow();
+		listeners.clear();
+	}
+
+	private static String getKey(long companyId, String event) {
+
+		return companyId + "#" + event;
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(BeaconEventBroadcaster.class);
+}
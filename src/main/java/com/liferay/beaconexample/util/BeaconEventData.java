@@ -0,0 +1,104 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The chart data of a single event: the per-region series, the names of the
+ * beacons, their proximity series and the date range they cover. Instances
+ * are shared through the {@link BeaconEventDataCache}. The proximity series
+ * of a beacon are only built when the beacon is first charted, and are then
+ * kept here, so they share the lifetime of the rest of the data; nothing else
+ * is ever modified.
+ * 
+ * @author James Falkner
+ */
+@SuppressWarnings("serial")
+public class BeaconEventData implements Serializable {
+
+	private final Map<String, PingSeries> regionChartData;
+	private final List<String> beaconNames;
+	private final ConcurrentMap<String, Map<String, PingSeries>> beaconChartData =
+		new ConcurrentHashMap<String, Map<String, PingSeries>>();
+	private final long firstTime;
+	private final long lastTime;
+
+	public BeaconEventData(
+		Map<String, PingSeries> regionChartData, List<String> beaconNames,
+		long firstTime, long lastTime) {
+
+		this.regionChartData = regionChartData;
+		this.beaconNames = beaconNames;
+		this.firstTime = firstTime;
+		this.lastTime = lastTime;
+	}
+
+	/**
+	 * @return The region series, keyed by region name
+	 */
+	public Map<String, PingSeries> getRegionChartData() {
+
+		return regionChartData;
+	}
+
+	/**
+	 * @return The names of the beacons that have pings, in order
+	 */
+	public List<String> getBeaconNames() {
+
+		return beaconNames;
+	}
+
+	/**
+	 * @param beaconName The name of a beacon
+	 * @return The proximity series of the beacon, keyed by proximity, or null
+	 *         if they haven't been built yet
+	 */
+	public Map<String, PingSeries> getBeaconChartData(String beaconName) {
+
+		return beaconChartData.get(beaconName);
+	}
+
+	/**
+	 * Keep the proximity series of a beacon, built from the same rollup
+	 * version as the rest of the data
+	 * @param beaconName The name of the beacon
+	 * @param proxData The unmodifiable proximity series of the beacon
+	 */
+	public void putBeaconChartData(
+		String beaconName, Map<String, PingSeries> proxData) {
+
+		beaconChartData.put(beaconName, proxData);
+	}
+
+	/**
+	 * @return The first recorded ping date for the event
+	 */
+	public Date getFirstDate() {
+
+		return new Date(firstTime);
+	}
+
+	/**
+	 * @return The last recorded ping date for the event
+	 */
+	public Date getLastDate() {
+
+		return new Date(lastTime);
+	}
+
+	public long getFirstTime() {
+
+		return firstTime;
+	}
+
+	public long getLastTime() {
+
+		return lastTime;
+	}
+}
@@ -0,0 +1,92 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Node-wide cache of the immutable {@link BeaconEventData} of each event, so
+ * every user viewing an event shares one copy of its chart data. Each entry
+ * remembers the {@link EventRollup} version it was built from, and is only
+ * returned while the rollup is unchanged: new pings make the next read
+ * rebuild the entry once, for everybody.
+ * 
+ * @author James Falkner
+ */
+public class BeaconEventDataCache {
+
+	private static final ConcurrentMap<BeaconEventDataKey, Entry> cache =
+		new ConcurrentHashMap<BeaconEventDataKey, Entry>();
+
+	/**
+	 * Get the cached data for a key, if it's still current
+	 * @param key The key of the data
+	 * @param rollup The current rollup of the key's event
+	 * @return The data, or null if it isn't cached or is out of date
+	 */
+	public static BeaconEventData get(
+		BeaconEventDataKey key, EventRollup rollup) {
+
+		Entry entry = cache.get(key);
+		if (entry == null || entry.rollup != rollup ||
+			entry.version != rollup.getVersion()) {
+
+			return null;
+		}
+		return entry.data;
+	}
+
+	/**
+	 * Cache data built from the current version of a rollup
+	 */
+	public static void put(
+		BeaconEventDataKey key, EventRollup rollup, BeaconEventData data) {
+
+		cache.put(key, new Entry(rollup, rollup.getVersion(), data));
+	}
+
+	/**
+	 * Drop the cached data of an event, at every resolution
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 */
+	public static void remove(long companyId, String event) {
+
+		Iterator<BeaconEventDataKey> keys = cache.keySet().iterator();
+		while (keys.hasNext()) {
+			BeaconEventDataKey key = keys.next();
+			if (key.getCompanyId() == companyId && key.getEvent().equals(event)) {
+				keys.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drop the cached data built from a rollup, which has been dropped
+	 * @param rollup The rollup
+	 */
+	public static void remove(EventRollup rollup) {
+
+		Iterator<Entry> entries = cache.values().iterator();
+		while (entries.hasNext()) {
+			if (entries.next().rollup == rollup) {
+				entries.remove();
+			}
+		}
+	}
+
+	private static class Entry {
+
+		private final EventRollup rollup;
+		private final long version;
+		private final BeaconEventData data;
+
+		private Entry(EventRollup rollup, long version, BeaconEventData data) {
+
+			this.rollup = rollup;
+			this.version = version;
+			this.data = data;
+		}
+	}
+}
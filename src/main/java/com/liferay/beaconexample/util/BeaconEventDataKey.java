@@ -0,0 +1,74 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.Serializable;
+
+/**
+ * Identifies the chart data of an event at a given resolution. This is all a
+ * user session needs to hold: the data itself is shared by every session on
+ * the node through the {@link BeaconEventDataCache}.
+ * 
+ * @author James Falkner
+ */
+@SuppressWarnings("serial")
+public class BeaconEventDataKey implements Serializable {
+
+	private final long companyId;
+	private final String event;
+	private final long resolution;
+
+	/**
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @param resolution The width of a time bucket, in milliseconds
+	 */
+	public BeaconEventDataKey(long companyId, String event, long resolution) {
+
+		this.companyId = companyId;
+		this.event = event;
+		this.resolution = resolution;
+	}
+
+	public long getCompanyId() {
+
+		return companyId;
+	}
+
+	public String getEvent() {
+
+		return event;
+	}
+
+	public long getResolution() {
+
+		return resolution;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof BeaconEventDataKey)) {
+			return false;
+		}
+		BeaconEventDataKey key = (BeaconEventDataKey) obj;
+		return companyId == key.companyId && resolution == key.resolution &&
+			event.equals(key.event);
+	}
+
+	@Override
+	public int hashCode() {
+
+		int hash = (int) (companyId ^ (companyId >>> 32));
+		hash = 31 * hash + event.hashCode();
+		return 31 * hash + (int) (resolution ^ (resolution >>> 32));
+	}
+
+	@Override
+	public String toString() {
+
+		return companyId + "#" + event + "#" + resolution;
+	}
+}
@@ -0,0 +1,34 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Follows the loading of an event's chart data, so the region series can be
+ * shown before the beacons are counted, and so a load that is no longer
+ * needed can be abandoned.
+ * 
+ * @author James Falkner
+ */
+public interface BeaconEventDataListener {
+
+	/**
+	 * Polled while the event's pings are scanned. Once it returns true, the
+	 * scan is abandoned with a {@link java.util.concurrent.CancellationException}.
+	 * 
+	 * @return true if the data is no longer needed
+	 */
+	public boolean isCancelled();
+
+	/**
+	 * Called, at most once, as soon as the region series are ready
+	 * 
+	 * @param regionChartData The region series, keyed by region name
+	 * @param firstDate The first recorded ping date for the event
+	 * @param lastDate The last recorded ping date for the event
+	 */
+	public void onRegionChartData(
+		Map<String, PingSeries> regionChartData, Date firstDate, Date lastDate);
+
+}
@@ -0,0 +1,62 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs chart data loads off the request threads, on a small bounded pool.
+ * When the pool and its queue are full, new loads are rejected rather than
+ * piling up behind the running ones.
+ * 
+ * @author James Falkner
+ */
+public class BeaconEventLoader {
+
+	private static final ExecutorService executor = new ThreadPoolExecutor(
+		PortletPropsValues.BEACONS_LOAD_THREADS,
+		PortletPropsValues.BEACONS_LOAD_THREADS, 60, TimeUnit.SECONDS,
+		new ArrayBlockingQueue<Runnable>(
+			PortletPropsValues.BEACONS_LOAD_QUEUE_SIZE),
+		new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+
+				Thread thread =
+					new Thread(
+						runnable, "Beacon event loader " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+	/**
+	 * Start a load in the background
+	 * @param load The load
+	 * @return The future of the load; cancel it to drop the load if it hasn't
+	 *         started yet
+	 * @throws java.util.concurrent.RejectedExecutionException if too many
+	 *         loads are waiting
+	 */
+	public static Future<?> submit(Runnable load) {
+
+		return executor.submit(load);
+	}
+
+	/**
+	 * Stop the loader when the plugin is undeployed. Loads that haven't
+	 * started are dropped, and running ones are interrupted.
+	 */
+	public static void shutdown() {
+
+		executor.shutdownNow();
+	}
+}
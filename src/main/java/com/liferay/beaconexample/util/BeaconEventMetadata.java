@@ -0,0 +1,60 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Summary information about the pings recorded for an event: the first and
+ * last ping dates and the number of rows.
+ * 
+ * @author James Falkner
+ */
+@SuppressWarnings("serial")
+public class BeaconEventMetadata implements Serializable {
+
+	private final long firstTime;
+	private final long lastTime;
+	private final int rowCount;
+
+	public BeaconEventMetadata(long firstTime, long lastTime, int rowCount) {
+
+		this.firstTime = firstTime;
+		this.lastTime = lastTime;
+		this.rowCount = rowCount;
+	}
+
+	/**
+	 * @return The first recorded ping date for the event
+	 */
+	public Date getFirstDate() {
+
+		return new Date(firstTime);
+	}
+
+	/**
+	 * @return The last recorded ping date for the event
+	 */
+	public Date getLastDate() {
+
+		return new Date(lastTime);
+	}
+
+	public long getFirstTime() {
+
+		return firstTime;
+	}
+
+	public long getLastTime() {
+
+		return lastTime;
+	}
+
+	/**
+	 * @return The number of pings (rows) recorded for the event
+	 */
+	public int getRowCount() {
+
+		return rowCount;
+	}
+}
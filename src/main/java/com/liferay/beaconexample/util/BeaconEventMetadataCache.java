@@ -0,0 +1,50 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the {@link BeaconEventMetadata} of each event so that the first and
+ * last ping dates don't require a reload of the event's date column. Entries
+ * must be removed whenever data is added to or removed from an event.
+ * 
+ * @author James Falkner
+ */
+public class BeaconEventMetadataCache {
+
+	private static final ConcurrentMap<String, BeaconEventMetadata> cache =
+		new ConcurrentHashMap<String, BeaconEventMetadata>();
+
+	/**
+	 * Get the cached metadata for an event
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @return The metadata, or null if it isn't cached
+	 */
+	public static BeaconEventMetadata get(long companyId, String event) {
+
+		return cache.get(getKey(companyId, event));
+	}
+
+	public static void put(
+		long companyId, String event, BeaconEventMetadata metadata) {
+
+		cache.put(getKey(companyId, event), metadata);
+	}
+
+	/**
+	 * Invalidate the cached metadata for an event
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 */
+	public static void remove(long companyId, String event) {
+
+		cache.remove(getKey(companyId, event));
+	}
+
+	private static String getKey(long companyId, String event) {
+
+		return companyId + "#" + event;
+	}
+}
@@ -0,0 +1,89 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.Map;
+
+/**
+ * The points of an event's series at one resolution that changed with a
+ * batch of newly written pings: for every series, the counts from a first
+ * changed bucket up to and including the latest bucket. Updates are shared by all listeners and are
+ * never modified.
+ * 
+ * @author James Falkner
+ */
+public class BeaconEventUpdate {
+
+	private final long companyId;
+	private final String event;
+	private final long pointStart;
+	private final long pointInterval;
+	private final int fromIndex;
+	private final Map<String, int[]> regionCounts;
+	private final Map<String, Map<String, int[]>> beaconCounts;
+
+	public BeaconEventUpdate(
+		long companyId, String event, long pointStart, long pointInterval,
+		int fromIndex, Map<String, int[]> regionCounts,
+		Map<String, Map<String, int[]>> beaconCounts) {
+
+		this.companyId = companyId;
+		this.event = event;
+		this.pointStart = pointStart;
+		this.pointInterval = pointInterval;
+		this.fromIndex = fromIndex;
+		this.regionCounts = regionCounts;
+		this.beaconCounts = beaconCounts;
+	}
+
+	public long getCompanyId() {
+
+		return companyId;
+	}
+
+	public String getEvent() {
+
+		return event;
+	}
+
+	/**
+	 * @return The time of the event's first point
+	 */
+	public long getPointStart() {
+
+		return pointStart;
+	}
+
+	/**
+	 * @return The time between two points, the resolution of the update
+	 */
+	public long getPointInterval() {
+
+		return pointInterval;
+	}
+
+	/**
+	 * @return The index of the first changed point of every series
+	 */
+	public int getFromIndex() {
+
+		return fromIndex;
+	}
+
+	/**
+	 * @return The changed counts, from the first changed point on, keyed by
+	 *         region name
+	 */
+	public Map<String, int[]> getRegionCounts() {
+
+		return regionCounts;
+	}
+
+	/**
+	 * @return The changed counts, from the first changed point on, keyed by
+	 *         beacon name and proximity
+	 */
+	public Map<String, Map<String, int[]>> getBeaconCounts() {
+
+		return beaconCounts;
+	}
+}
@@ -0,0 +1,19 @@
+
+package com.liferay.beaconexample.util;
+
+/**
+ * Receives the changed points of an event as pings are written
+ * 
+ * @author James Falkner
+ */
+public interface BeaconEventUpdateListener {
+
+	/**
+	 * Called on the broadcaster's thread, so implementations must not block
+	 * and must hand UI changes to <code>UI.access</code>
+	 * 
+	 * @param update The changed points
+	 */
+	public void onUpdate(BeaconEventUpdate update);
+
+}
@@ -1,35 +1,36 @@
 
 package com.liferay.beaconexample.util;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.liferay.portal.kernel.dao.orm.DynamicQuery;
+import com.liferay.portal.kernel.dao.orm.RestrictionsFactoryUtil;
 import com.liferay.portal.kernel.exception.PortalException;
 import com.liferay.portal.kernel.exception.SystemException;
-import com.liferay.portal.kernel.json.JSONArray;
-import com.liferay.portal.kernel.json.JSONFactoryUtil;
-import com.liferay.portal.kernel.json.JSONObject;
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.util.ArrayUtil;
 import com.liferay.portal.kernel.util.Validator;
-import com.liferay.portlet.expando.model.ExpandoRow;
-import com.liferay.portlet.expando.model.ExpandoTable;
+import com.liferay.portlet.expando.model.ExpandoColumn;
 import com.liferay.portlet.expando.model.ExpandoValue;
 import com.liferay.portlet.expando.service.ExpandoColumnLocalServiceUtil;
-import com.liferay.portlet.expando.service.ExpandoRowLocalServiceUtil;
-import com.liferay.portlet.expando.service.ExpandoTableLocalServiceUtil;
 import com.liferay.portlet.expando.service.ExpandoValueLocalServiceUtil;
 import com.vaadin.addon.charts.Chart;
+import com.vaadin.addon.charts.model.AbstractPlotOptions;
 import com.vaadin.addon.charts.model.Axis;
 import com.vaadin.addon.charts.model.AxisType;
 import com.vaadin.addon.charts.model.ChartType;
 import com.vaadin.addon.charts.model.Configuration;
-import com.vaadin.addon.charts.model.ContainerDataSeries;
+import com.vaadin.addon.charts.model.ListSeries;
 import com.vaadin.addon.charts.model.Marker;
 import com.vaadin.addon.charts.model.MarkerStates;
 import com.vaadin.addon.charts.model.PlotOptionsArea;
@@ -39,9 +40,7 @@ import com.vaadin.addon.charts.model.State;
 import com.vaadin.addon.charts.model.States;
 import com.vaadin.addon.charts.model.Title;
 import com.vaadin.addon.charts.model.ZoomType;
-import com.vaadin.data.Container;
-import com.vaadin.data.Item;
-import com.vaadin.data.util.IndexedContainer;
+import com.vaadin.addon.charts.model.gsonhelpers.ChartSerialization;
 
 /**
  * Lots of static utility methods to get our data out of ExpandoTables.
@@ -50,7 +49,7 @@ import com.vaadin.data.util.IndexedContainer;
  */
 public class BeaconExpandoDataUtil {
 
-	// Data point incremental period
+	// Default data point period, always one of the configured resolutions
 	public static final long FIVE_MINUTES_IN_MILLIS = 5 * 60 * 1000;
 
 	// IPC event constants and portlet session key constants
@@ -62,12 +61,8 @@ public class BeaconExpandoDataUtil {
 		"com.liferay.beacons.selectedEvent";
 	public static final String IPC_SELECTED_REGION =
 		"com.liferay.beacons.selectedRegion";
-	public static final String IPC_REGION_CHART_DATA =
-		"com.liferay.beacons.regionChartData";
-	public static final String IPC_BEACON_CHART_DATA =
-		"com.liferay.beacons.beaconChartData";
-	public static final String IPC_REGION_FIRST_DATE =
-		"com.liferay.beacons.regionFirstDate";
+	public static final String IPC_EVENT_DATA_KEY =
+		"com.liferay.beacons.eventDataKey";
 
 	// Expando Table constants
 	public static final String BEACON_DATA_DATE_COL_NAME = "date";
@@ -77,6 +72,14 @@ public class BeaconExpandoDataUtil {
 	public static final String BEACON_DATA_REGIONS_COL_NAME = "regions";
 	public static final String BEACON_DATA_ID_COL_NAME = "id";
 
+	// Rows read per query when a time range is scanned, well under the
+	// limit some databases put on the size of an IN list
+	private static final int SCAN_CHUNK_SIZE = 500;
+
+	// One chart build in this many has its payload measured
+	private static final int PAYLOAD_SAMPLE_INTERVAL = 32;
+	private static final AtomicInteger chartBuilds = new AtomicInteger();
+
 	/**
 	 * Get the first date for which beacon data was recorded
 	 * @param event The event name
@@ -89,8 +92,7 @@ public class BeaconExpandoDataUtil {
 	public static Date getFirstDateForEvent(String event, long companyId)
 		throws PortalException, SystemException {
 
-		List<ExpandoValue> dateStamps = getDateStampsForEvent(companyId, event);
-		return (dateStamps.get(0).getDate());
+		return getEventMetadata(companyId, event).getFirstDate();
 
 	}
 
@@ -105,187 +107,616 @@ public class BeaconExpandoDataUtil {
 	public static Date getLastDateForEvent(String event, long companyId)
 		throws PortalException, SystemException {
 
-		List<ExpandoValue> dateStamps = getDateStampsForEvent(companyId, event);
-		return (dateStamps.get(dateStamps.size() - 1).getDate());
+		return getEventMetadata(companyId, event).getLastDate();
 
 	}
 
 	/**
-	 * Get a list of all events represented in the Expando tables
-	 * @return a list of all events
+	 * Get a list of all events of a company, from the {@link EventCatalog}
+	 * @param companyId The company ID under which the data can be found
+	 * @return a list of all events, unmodifiable
 	 * @throws SystemException if things go wrong
 	 */
-	public static List<String> getAllEvents()
+	public static List<String> getAllEvents(long companyId)
 		throws SystemException {
 
-		List<String> allEvents = new ArrayList<String>();
+		long start = System.nanoTime();
+		try {
+			return EventCatalog.getEvents(companyId);
+		}
+		finally {
+			BeaconMetrics.EVENT_CATALOG_SECONDS.observeSince(start);
+		}
+	}
+
+	/**
+	 * Generate chart series for the region data of an event and list its
+	 * beacons, from the event's rollup. Only the first read of an event on
+	 * this node scans the event's rows.
+	 * 
+	 * @param event The name of the event for which to retrieve data
+	 * @param companyId The company ID under which the data can be found
+	 * @return The region series and beacon names for the event
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	public static BeaconEventData getChartDataForEvent(
+		String event, long companyId)
+		throws PortalException, SystemException {
+
+		return getChartData(
+			new BeaconEventDataKey(companyId, event, FIVE_MINUTES_IN_MILLIS));
+	}
+
+	/**
+	 * Get the chart data identified by a key. The data is shared by every
+	 * caller on this node until new pings arrive for the event, so it must not
+	 * be modified.
+	 * 
+	 * @param key The company, event and resolution of the data
+	 * @return The region series and beacon names for the event
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	public static BeaconEventData getChartData(BeaconEventDataKey key)
+		throws PortalException, SystemException {
+
+		return getChartData(key, null);
+	}
 
-		List<ExpandoTable> allTables =
-			ExpandoTableLocalServiceUtil.getExpandoTables(-1, -1);
-		for (ExpandoTable tbl : allTables) {
-			if (!BeaconExpandoDataUtil.BEACON_DATA_CLASS.equals(tbl.getClassName())) {
-				continue;
+	/**
+	 * Get the chart data identified by a key, reporting the region series to a
+	 * listener as soon as they're ready. If the event has to be scanned, the
+	 * listener can cancel the scan.
+	 * 
+	 * @param key The company, event and resolution of the data
+	 * @param listener The listener, may be null
+	 * @return The region series and beacon names for the event
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 * @throws java.util.concurrent.CancellationException if the listener
+	 *         cancelled the load
+	 */
+	public static BeaconEventData getChartData(
+		BeaconEventDataKey key, BeaconEventDataListener listener)
+		throws PortalException, SystemException {
+
+		long start = System.nanoTime();
+		try {
+			checkResolution(key);
+
+			RegionChartDataNotifier notifier =
+				new RegionChartDataNotifier(listener, key.getResolution());
+
+			while (true) {
+				EventRollup rollup =
+					getEventRollup(key.getCompanyId(), key.getEvent(), notifier);
+
+				// the scan of a rollup we waited for failed, or was cancelled
+				if (!rollup.awaitComplete()) {
+					continue;
+				}
+
+				synchronized (rollup) {
+					BeaconEventData data = getCurrentChartData(key, rollup);
+					notifier.notify(data);
+					return data;
+				}
 			}
-			allEvents.add(tbl.getName());
 		}
-		return allEvents;
+		finally {
+			BeaconMetrics.CHART_DATA_SECONDS.observeSince(start);
+		}
 	}
 
 	/**
-	 * Generate Vaadin Containers for beacon region data.
+	 * Get the proximity series of one beacon of an event. They're built the
+	 * first time the beacon is charted, and then shared like the rest of the
+	 * event's chart data, so the cost of charting a beacon doesn't depend on
+	 * how many other beacons the event has.
+	 * 
+	 * @param key The company, event and resolution of the data
+	 * @param beaconName The name of the beacon
+	 * @return The proximity series of the beacon, keyed by proximity; empty if
+	 *         the beacon has no pings
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	public static Map<String, PingSeries> getBeaconChartData(
+		BeaconEventDataKey key, String beaconName)
+		throws PortalException, SystemException {
+
+		long start = System.nanoTime();
+		try {
+			checkResolution(key);
+
+			while (true) {
+				EventRollup rollup = getEventRollup(
+					key.getCompanyId(), key.getEvent(),
+					new RegionChartDataNotifier(null, key.getResolution()));
+
+				// the scan of a rollup we waited for failed, or was cancelled
+				if (!rollup.awaitComplete()) {
+					continue;
+				}
+
+				synchronized (rollup) {
+					BeaconEventData data = getCurrentChartData(key, rollup);
+
+					Map<String, PingSeries> proxData =
+						data.getBeaconChartData(beaconName);
+					if (proxData == null) {
+						long buildStart = System.nanoTime();
+						PingAggregator aggregator = rollup.getAggregator();
+
+						proxData = Collections.unmodifiableMap(
+							buildBeaconSeries(
+								aggregator, key.getResolution(),
+								aggregator.getBeacons().lookup(beaconName)));
+
+						data.putBeaconChartData(beaconName, proxData);
+						BeaconMetrics.SERIES_BUILD_SECONDS.observeSince(buildStart);
+					}
+					return proxData;
+				}
+			}
+		}
+		finally {
+			BeaconMetrics.BEACON_CHART_DATA_SECONDS.observeSince(start);
+		}
+	}
+
+	private static void checkResolution(BeaconEventDataKey key)
+		throws PortalException {
+
+		if (!ArrayUtil.contains(
+				PortletPropsValues.BEACONS_RESOLUTIONS, key.getResolution())) {
+
+			throw new PortalException(
+				"Unsupported resolution " + key.getResolution());
+		}
+	}
+
+	/**
+	 * Get the cached chart data of a complete rollup, building it if the
+	 * rollup changed since; the caller holds the rollup's lock
+	 */
+	private static BeaconEventData getCurrentChartData(
+		BeaconEventDataKey key, EventRollup rollup) {
+
+		BeaconEventData data = BeaconEventDataCache.get(key, rollup);
+		if (data == null) {
+			long start = System.nanoTime();
+			PingAggregator aggregator = rollup.getAggregator();
+			long resolution = key.getResolution();
+
+			data = new BeaconEventData(
+				Collections.unmodifiableMap(
+					buildRegionSeries(aggregator, resolution)),
+				Collections.unmodifiableList(
+					getBeaconNames(aggregator, resolution)),
+				aggregator.getFirstBucketTime(resolution),
+				rollup.getMetadata().getLastTime());
+
+			BeaconEventDataCache.put(key, rollup, data);
+			BeaconMetrics.SERIES_BUILD_SECONDS.observeSince(start);
+		}
+		return data;
+	}
+
+	/**
+	 * Generate chart series for beacon region data.
 	 * 
 	 * @param event The name of the event for which to retrieve data
 	 * @param companyId The company ID under which the data can be found
-	 * @return A set of Vaadin Containers containing data for the event
+	 * @return The series of each region of the event
 	 * @throws PortalException if things go wrong
 	 * @throws SystemException if things go wrong
 	 */
-	@SuppressWarnings("unchecked")
-	public static Map<String, Container> getRegionChartDataForEvent(
+	public static Map<String, PingSeries> getRegionChartDataForEvent(
 		String event, long companyId)
 		throws PortalException, SystemException {
 
-		// Create the container set
-		Map<String, Container> containers = new HashMap<String, Container>();
+		return getChartDataForEvent(event, companyId).getRegionChartData();
+	}
+
+	/**
+	 * Generate chart series for beacon data.
+	 * 
+	 * @param event The name of the event for which to retrieve data
+	 * @param companyId The company ID under which the data can be found
+	 * @return The proximity series of each beacon of the event
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	public static Map<String, Map<String, PingSeries>> getBeaconChartDataForBeacons(
+		String event, long companyId)
+		throws PortalException, SystemException {
+
+		BeaconEventDataKey key =
+			new BeaconEventDataKey(companyId, event, FIVE_MINUTES_IN_MILLIS);
+
+		Map<String, Map<String, PingSeries>> beaconChartData =
+			new HashMap<String, Map<String, PingSeries>>();
+		for (String beaconName : getChartData(key).getBeaconNames()) {
+			beaconChartData.put(beaconName, getBeaconChartData(key, beaconName));
+		}
+		return beaconChartData;
+	}
+
+	/**
+	 * Generate chart series for the beacon region data of a time range of an
+	 * event, at the finest resolution that fits the range.
+	 * 
+	 * @param event The name of the event for which to retrieve data
+	 * @param companyId The company ID under which the data can be found
+	 * @param from The start of the range, inclusive
+	 * @param to The end of the range, exclusive
+	 * @return The series of each region of the event in the range
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	public static Map<String, PingSeries> getRegionChartDataForEvent(
+		String event, long companyId, Date from, Date to)
+		throws PortalException, SystemException {
+
+		return getChartDataForRange(
+			companyId, event, from.getTime(), to.getTime()).getRegionChartData();
+	}
 
-		List<ExpandoValue> dateStamps = getDateStampsForEvent(companyId, event);
-		Date firstDate = dateStamps.get(0).getDate();
-		long lastDate = dateStamps.get(dateStamps.size() - 1).getDate().getTime();
-		long lastBucket = (lastDate - firstDate.getTime()) / FIVE_MINUTES_IN_MILLIS;
+	/**
+	 * Generate chart series for the beacon data of a time range of an event,
+	 * at the finest resolution that fits the range. No region series are
+	 * built.
+	 * 
+	 * @param event The name of the event for which to retrieve data
+	 * @param companyId The company ID under which the data can be found
+	 * @param from The start of the range, inclusive
+	 * @param to The end of the range, exclusive
+	 * @return The proximity series of each beacon of the event in the range
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	public static Map<String, Map<String, PingSeries>> getBeaconChartDataForBeacons(
+		String event, long companyId, Date from, Date to)
+		throws PortalException, SystemException {
 
-		Map<String, Map<Long, Set<String>>> regionPings =
-			getRegionPingMap(companyId, event, dateStamps);
+		long fromTime = from.getTime();
+		long toTime = to.getTime();
+		long resolution = getResolution(toTime - fromTime);
 
-		Date now = new Date();
-		for (String region : regionPings.keySet()) {
+		Map<String, Map<String, PingSeries>> beaconChartData =
+			new HashMap<String, Map<String, PingSeries>>();
 
-			Container container = new IndexedContainer();
-			container.addContainerProperty("Number of Pings", Number.class, 0);
-			container.addContainerProperty("Time of Day", Date.class, now);
+		EventRollup rollup = getCompleteRollup(companyId, event);
+		if (rollup != null) {
+			BeaconEventDataKey key =
+				new BeaconEventDataKey(companyId, event, resolution);
 
-			Map<Long, Set<String>> regionMap = regionPings.get(region);
-			for (long i = 0; i < lastBucket; i++) {
-				Set<String> allRegPings = regionMap.get(i);
-				int count = allRegPings != null ? allRegPings.size() : 0;
-				Item item = container.addItem(i);
-				item.getItemProperty("Number of Pings").setValue(count);
-				item.getItemProperty("Time of Day").setValue(
-					new Date(firstDate.getTime() + (i * FIVE_MINUTES_IN_MILLIS)));
+			for (String beaconName : getChartData(key).getBeaconNames()) {
+				beaconChartData.put(
+					beaconName,
+					slice(getBeaconChartData(key, beaconName), fromTime, toTime));
 			}
-			containers.put(region, container);
+			return beaconChartData;
 		}
-		return containers;
 
+		PingAggregator aggregator =
+			scanRange(companyId, event, resolution, fromTime, toTime);
+
+		String[] beacons = aggregator.getBeacons().getNames();
+		for (int beacon = 0; beacon < beacons.length; beacon++) {
+			Map<String, PingSeries> proxData =
+				buildBeaconSeries(aggregator, resolution, beacon);
+			if (!proxData.isEmpty()) {
+				beaconChartData.put(beacons[beacon], proxData);
+			}
+		}
+		return beaconChartData;
 	}
 
 	/**
-	 * Generate Vaadin Containers for beacon data.
+	 * Generate chart series for a time range of an event. If the event has
+	 * been read on this node, its rollup already has the counts. Otherwise
+	 * only the rows in the range are read, found through the event's
+	 * {@link EventDateIndex}. Beacon series aren't built here; get them with
+	 * {@link #getBeaconChartDataForRange(long, String, long, long, String)}
+	 * for the beacons that are charted.
 	 * 
+	 * @param companyId The company ID under which the data can be found
 	 * @param event The name of the event for which to retrieve data
+	 * @param fromTime The start of the range, inclusive
+	 * @param toTime The end of the range, exclusive
+	 * @return The region series and beacon names of the range
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	public static BeaconEventData getChartDataForRange(
+		long companyId, String event, long fromTime, long toTime)
+		throws PortalException, SystemException {
+
+		long start = System.nanoTime();
+		try {
+			long resolution = getResolution(toTime - fromTime);
+
+			EventRollup rollup = getCompleteRollup(companyId, event);
+			if (rollup != null) {
+				BeaconEventData data = getChartData(
+					new BeaconEventDataKey(companyId, event, resolution));
+
+				return new BeaconEventData(
+					Collections.unmodifiableMap(
+						slice(data.getRegionChartData(), fromTime, toTime)),
+					data.getBeaconNames(), fromTime, toTime);
+			}
+
+			PingAggregator aggregator =
+				scanRange(companyId, event, resolution, fromTime, toTime);
+
+			return new BeaconEventData(
+				Collections.unmodifiableMap(buildRegionSeries(aggregator, resolution)),
+				Collections.unmodifiableList(getBeaconNames(aggregator, resolution)),
+				fromTime, toTime);
+		}
+		finally {
+			BeaconMetrics.RANGE_CHART_DATA_SECONDS.observeSince(start);
+		}
+	}
+
+	/**
+	 * Get the proximity series of one beacon in a time range of an event. If
+	 * the event has a rollup, the beacon's shared series are sliced, building
+	 * them first if it hasn't been charted yet; otherwise the rows in the
+	 * range are read again, and only this beacon's series are built.
+	 * 
 	 * @param companyId The company ID under which the data can be found
-	 * @return A set of Vaadin Containers containing data for the event
+	 * @param event The name of the event for which to retrieve data
+	 * @param fromTime The start of the range, inclusive
+	 * @param toTime The end of the range, exclusive
+	 * @param beaconName The name of the beacon
+	 * @return The proximity series of the beacon in the range, keyed by
+	 *         proximity; empty if the beacon has no pings
 	 * @throws PortalException if things go wrong
 	 * @throws SystemException if things go wrong
 	 */
-	@SuppressWarnings("unchecked")
-	public static Map<String, Map<String, Container>> getBeaconChartDataForBeacons(
-		String event, long companyId)
+	public static Map<String, PingSeries> getBeaconChartDataForRange(
+		long companyId, String event, long fromTime, long toTime,
+		String beaconName)
 		throws PortalException, SystemException {
 
-		// Create the container set
+		long resolution = getResolution(toTime - fromTime);
+
+		EventRollup rollup = getCompleteRollup(companyId, event);
+		if (rollup != null) {
+			BeaconEventDataKey key =
+				new BeaconEventDataKey(companyId, event, resolution);
+
+			return Collections.unmodifiableMap(
+				slice(getBeaconChartData(key, beaconName), fromTime, toTime));
+		}
+
+		PingAggregator aggregator =
+			scanRange(companyId, event, resolution, fromTime, toTime);
+
+		return Collections.unmodifiableMap(
+			buildBeaconSeries(
+				aggregator, resolution,
+				aggregator.getBeacons().lookup(beaconName)));
+	}
+
+	/**
+	 * @return The rollup of an event if it has been read on this node and its
+	 *         scan is complete, otherwise null
+	 */
+	private static EventRollup getCompleteRollup(long companyId, String event) {
 
-		List<ExpandoValue> dateStamps = getDateStampsForEvent(companyId, event);
+		EventRollup rollup = EventRollupRegistry.get(companyId, event);
+		if (rollup != null && rollup.isComplete()) {
+			refreshRollup(companyId, event, rollup);
+			return rollup;
+		}
+		return null;
+	}
 
-		Map<String, Map<String, Container>> result =
-			new HashMap<String, Map<String, Container>>();
+	private static Map<String, PingSeries> slice(
+		Map<String, PingSeries> data, long fromTime, long toTime) {
 
-		Map<String, Map<String, Map<Long, Set<String>>>> beaconPings =
-			getBeaconPingMap(companyId, event, dateStamps);
+		Map<String, PingSeries> sliced = new HashMap<String, PingSeries>();
+		for (Map.Entry<String, PingSeries> entry : data.entrySet()) {
+			sliced.put(entry.getKey(), entry.getValue().slice(fromTime, toTime));
+		}
+		return sliced;
+	}
 
-		for (String beaconName : beaconPings.keySet()) {
+	/**
+	 * Pick the resolution at which a time range is charted: the finest one
+	 * that keeps a series within the configured number of points, or the
+	 * coarsest one if none does.
+	 * 
+	 * @param range The length of the charted time range
+	 * @return One of the configured resolutions
+	 */
+	public static long getResolution(long range) {
 
-			Map<String, Container> containers = new HashMap<String, Container>();
+		long[] resolutions = PortletPropsValues.BEACONS_RESOLUTIONS;
+		for (long resolution : resolutions) {
+			if (range / resolution + 1 <= PortletPropsValues.BEACONS_CHART_MAX_POINTS) {
+				return resolution;
+			}
+		}
+		return resolutions[resolutions.length - 1];
+	}
 
-			Date firstDate = dateStamps.get(0).getDate();
-			long lastDate = dateStamps.get(dateStamps.size() - 1).getDate().getTime();
-			long lastBucket =
-				(lastDate - firstDate.getTime()) / FIVE_MINUTES_IN_MILLIS;
+	/**
+	 * Build a series per region; region symbols are resolved to names here,
+	 * for the chart legend
+	 */
+	private static Map<String, PingSeries> buildRegionSeries(
+		PingAggregator aggregator, long resolution) {
+
+		// Create the series set
+		Map<String, PingSeries> series = new HashMap<String, PingSeries>();
+
+		String[] regions = aggregator.getRegions().getNames();
+		for (int region = 0; region < regions.length; region++) {
+			PingBucketCounter counter =
+				aggregator.getRegionCounter(resolution, region);
+			if (counter != null) {
+				series.put(
+					regions[region],
+					buildSeries(regions[region], aggregator, counter, resolution));
+			}
+		}
+		return series;
+	}
 
-			Map<String, Map<Long, Set<String>>> beaconPingsForBeacon =
-				beaconPings.get(beaconName);
+	/**
+	 * The catalog of an event's beacons: the names of the beacons with any
+	 * pings, without building their series
+	 */
+	private static List<String> getBeaconNames(
+		PingAggregator aggregator, long resolution) {
 
-			// [proximity, [TimeBucket, [id, id, id]]]
+		List<String> beaconNames = new ArrayList<String>();
 
-			Date now = new Date();
-			for (String proximity : beaconPingsForBeacon.keySet()) {
-				Container container = new IndexedContainer();
-				container.addContainerProperty("Number of Pings", Number.class, 0);
-				container.addContainerProperty("Time of Day", Date.class, now);
+		String[] beacons = aggregator.getBeacons().getNames();
+		int proximityCount = aggregator.getProximities().size();
+		for (int beacon = 0; beacon < beacons.length; beacon++) {
+			for (int proximity = 0; proximity < proximityCount; proximity++) {
+				if (aggregator.getBeaconCounter(
+						resolution, beacon, proximity) != null) {
 
-				Map<Long, Set<String>> proxPingMap =
-					beaconPingsForBeacon.get(proximity);
-				for (long i = 0; i < lastBucket; i++) {
-					Set<String> allBeacPings = proxPingMap.get(i);
-					int count = allBeacPings != null ? allBeacPings.size() : 0;
-					Item item = container.addItem(i);
-					item.getItemProperty("Number of Pings").setValue(count);
-					item.getItemProperty("Time of Day").setValue(
-						new Date(firstDate.getTime() + (i * FIVE_MINUTES_IN_MILLIS)));;
+					beaconNames.add(beacons[beacon]);
+					break;
 				}
-				containers.put(proximity, container);
 			}
+		}
 
-			result.put(beaconName, containers);
+		Collections.sort(beaconNames);
+		return beaconNames;
+	}
+
+	/**
+	 * Build a series per proximity of one beacon
+	 * @param beacon a symbol of the aggregator's beacons, or -1 for a beacon
+	 *        without pings
+	 */
+	private static Map<String, PingSeries> buildBeaconSeries(
+		PingAggregator aggregator, long resolution, int beacon) {
+
+		// [proximity, series]
+		Map<String, PingSeries> series = new HashMap<String, PingSeries>();
+
+		if (beacon < 0) {
+			return series;
 		}
 
-		return result;
+		String[] proximities = aggregator.getProximities().getNames();
+		for (int proximity = 0; proximity < proximities.length; proximity++) {
+			PingBucketCounter counter =
+				aggregator.getBeaconCounter(resolution, beacon, proximity);
+			if (counter != null) {
+				series.put(
+					proximities[proximity],
+					buildSeries(
+						proximities[proximity], aggregator, counter, resolution));
+			}
+		}
+
+		return series;
+	}
+
+	private static PingSeries buildSeries(
+		String name, PingAggregator aggregator, PingBucketCounter counter,
+		long resolution) {
 
+		int bucketCount = aggregator.getBucketCount(resolution);
+		BeaconMetrics.BUCKETS_PRODUCED.add(bucketCount);
+
+		return new PingSeries(
+			name, aggregator.getFirstBucketTime(resolution), resolution,
+			counter.getCounts(bucketCount));
 	}
 
 	/**
-	 * Make a Vaadin Chart from a list of data series (represented as Vaadin containers)
+	 * Make a Vaadin Chart from a list of data series
 	 * 
-	 * @param event The name of the event
 	 * @param data The set of data for this event
-	 * @param firstDate The first date for which to create the chart
 	 * @return A Vaadin chart showing all beacon region data for the specified event.
 	 */
 
 	public static Chart getRegionChartForEvent(
-		Map<String, Container> data, Date firstDate) {
+		Map<String, PingSeries> data) {
 
-		Chart chart = new Chart();
-		chart.setHeight("100%");
-		chart.setWidth("100%");
+		long start = System.nanoTime();
+		try {
+			Chart chart = new Chart();
+			chart.setHeight("100%");
+			chart.setWidth("100%");
 
-		Configuration configuration = new Configuration();
-		configuration.getChart().setZoomType(ZoomType.X);
-		configuration.getChart().setType(ChartType.LINE);
-		configuration.getTitle().setText("iBeacon Region Pings");
+			Configuration configuration = new Configuration();
+			configuration.getChart().setZoomType(ZoomType.X);
+			configuration.getChart().setType(ChartType.LINE);
+			configuration.getTitle().setText("iBeacon Region Pings");
 
-		String title = "Click and drag in the plot area to zoom in";
-		configuration.getSubTitle().setText(title);
+			String title = "Click and drag in the plot area to zoom in";
+			configuration.getSubTitle().setText(title);
 
-		configuration.getxAxis().setType(AxisType.DATETIME);
-		configuration.getxAxis().setMinRange(FIVE_MINUTES_IN_MILLIS);
-		configuration.getxAxis().setTitle(new Title("Time of Day"));
+			configuration.getxAxis().setType(AxisType.DATETIME);
+			configuration.getxAxis().setTitle(new Title("Time of Day"));
 
-		configuration.getLegend().setEnabled(true);
+			configuration.getLegend().setEnabled(true);
 
-		Axis yAxis = configuration.getyAxis();
-		yAxis.setTitle(new Title("Number of Pings"));
-		yAxis.setStartOnTick(false);
-		yAxis.setShowFirstLabel(false);
+			Axis yAxis = configuration.getyAxis();
+			yAxis.setTitle(new Title("Number of Pings"));
+			yAxis.setStartOnTick(false);
+			yAxis.setShowFirstLabel(false);
 
-		configuration.getTooltip().setShared(true);
+			configuration.getTooltip().setShared(true);
+
+			setRegionSeries(configuration, data);
+			chart.drawChart(configuration);
+			measurePayload(configuration);
+
+			return chart;
+		}
+		finally {
+			BeaconMetrics.CHART_BUILD_SECONDS.observeSince(start);
+		}
+	}
+
+	/**
+	 * Replace the series of a region chart with series of another time range
+	 * or resolution, e.g. when zooming in
+	 * 
+	 * @param chart A chart made by {@link #getRegionChartForEvent(Map)}
+	 * @param data The new series
+	 */
+	public static void setRegionChartSeries(
+		Chart chart, Map<String, PingSeries> data) {
+
+		long start = System.nanoTime();
+		try {
+			Configuration configuration = chart.getConfiguration();
+
+			setRegionSeries(configuration, data);
+			chart.drawChart(configuration);
+			measurePayload(configuration);
+		}
+		finally {
+			BeaconMetrics.CHART_BUILD_SECONDS.observeSince(start);
+		}
+	}
+
+	private static void setRegionSeries(
+		Configuration configuration, Map<String, PingSeries> data) {
 
 		PlotOptionsLine plotOptions = new PlotOptionsLine();
 
 		plotOptions.setLineWidth(1);
 		plotOptions.setShadow(false);
 
-		plotOptions.setPointStart(firstDate);
-		plotOptions.setPointInterval(FIVE_MINUTES_IN_MILLIS);
+		setPointTimes(configuration, plotOptions, data);
 
 		Marker marker = new Marker();
 		marker.setEnabled(false);
@@ -302,328 +733,861 @@ public class BeaconExpandoDataUtil {
 		plotOptions.setShadow(true);
 		configuration.setPlotOptions(plotOptions);
 
-		List<Series> containerDataSeries = new ArrayList<Series>();
-		for (String seriesName : data.keySet()) {
-			ContainerDataSeries series =
-				new ContainerDataSeries(data.get(seriesName));
-
-			series.setName(seriesName);
-			series.setYPropertyId("Number of Pings");
-			containerDataSeries.add(series);
-		}
-
-		configuration.setSeries(containerDataSeries);
-		chart.drawChart(configuration);
-
-		return chart;
+		configuration.setSeries(toChartSeries(data));
 	}
 
 	/**
-	 * Make a Vaadin Chart from a list of data series (represented as Vaadin containers)
+	 * Make a Vaadin Chart from a list of data series
 	 * 
 	 * @param event The name of the event
 	 * @param beaconName The name of a specific beacon
 	 * @param data The set of data for this beacon
-	 * @param firstDate The first date for which to create the chart
 	 * @return A Vaadin chart showing all beacon proximity data for the specified beacon.
 	 */
 	public static Chart getBeaconProximityChartForEvent(
-		String event, String beaconName, Map<String, Container> data, Date firstDate) {
+		String event, String beaconName, Map<String, PingSeries> data) {
 
-		Chart chart = new Chart();
-		chart.setHeight("100%");
-		chart.setWidth("100%");
+		long start = System.nanoTime();
+		try {
+			Chart chart = new Chart();
+			chart.setHeight("100%");
+			chart.setWidth("100%");
 
-		Configuration configuration = new Configuration();
-		configuration.getChart().setZoomType(ZoomType.X);
-		configuration.getChart().setType(ChartType.AREA);
-		configuration.getTitle().setText(
-			event + ": Individual Beacon Proximity Pings for " + beaconName);
+			Configuration configuration = new Configuration();
+			configuration.getChart().setZoomType(ZoomType.X);
+			configuration.getChart().setType(ChartType.AREA);
+			configuration.getTitle().setText(
+				event + ": Individual Beacon Proximity Pings for " + beaconName);
 
-		String title = "Click and drag in the plot area to zoom in";
-		configuration.getSubTitle().setText(title);
+			String title = "Click and drag in the plot area to zoom in";
+			configuration.getSubTitle().setText(title);
 
-		configuration.getxAxis().setType(AxisType.DATETIME);
-		configuration.getxAxis().setMinRange(FIVE_MINUTES_IN_MILLIS);
-		configuration.getxAxis().setTitle(new Title("Time of Day"));
+			configuration.getxAxis().setType(AxisType.DATETIME);
+			configuration.getxAxis().setTitle(new Title("Time of Day"));
 
-		configuration.getLegend().setEnabled(true);
+			configuration.getLegend().setEnabled(true);
 
-		Axis yAxis = configuration.getyAxis();
-		yAxis.setTitle(new Title("Number of Pings"));
-		yAxis.setStartOnTick(false);
-		yAxis.setShowFirstLabel(false);
+			Axis yAxis = configuration.getyAxis();
+			yAxis.setTitle(new Title("Number of Pings"));
+			yAxis.setStartOnTick(false);
+			yAxis.setShowFirstLabel(false);
 
-		configuration.getTooltip().setShared(true);
+			configuration.getTooltip().setShared(true);
 
-		PlotOptionsArea plotOptions = new PlotOptionsArea();
+			PlotOptionsArea plotOptions = new PlotOptionsArea();
 
-		plotOptions.setLineWidth(2);
-		plotOptions.setShadow(true);
+			plotOptions.setLineWidth(2);
+			plotOptions.setShadow(true);
 
-		plotOptions.setPointStart(firstDate);
-		plotOptions.setPointInterval(FIVE_MINUTES_IN_MILLIS);
+			setPointTimes(configuration, plotOptions, data);
 
-		Marker marker = new Marker();
-		marker.setEnabled(false);
-		State hoverState = new State(true);
-		hoverState.setRadius(5);
-		MarkerStates states = new MarkerStates(hoverState);
-		marker.setStates(states);
+			Marker marker = new Marker();
+			marker.setEnabled(false);
+			State hoverState = new State(true);
+			hoverState.setRadius(5);
+			MarkerStates states = new MarkerStates(hoverState);
+			marker.setStates(states);
 
-		State hoverStateForArea = new State(true);
-		hoverState.setLineWidth(1);
+			State hoverStateForArea = new State(true);
+			hoverState.setLineWidth(1);
 
-		plotOptions.setStates(new States(hoverStateForArea));
-		plotOptions.setMarker(marker);
-		plotOptions.setShadow(true);
-		configuration.setPlotOptions(plotOptions);
+			plotOptions.setStates(new States(hoverStateForArea));
+			plotOptions.setMarker(marker);
+			plotOptions.setShadow(true);
+			configuration.setPlotOptions(plotOptions);
+
+			configuration.setSeries(toChartSeries(data));
+			chart.drawChart(configuration);
+			measurePayload(configuration);
+
+			return chart;
+		}
+		finally {
+			BeaconMetrics.CHART_BUILD_SECONDS.observeSince(start);
+		}
+	}
+
+	/**
+	 * Make the chart series of a chart, sharing the configured point budget
+	 * between them
+	 */
+	private static List<Series> toChartSeries(Map<String, PingSeries> data) {
+
+		int maxPoints = getMaxPoints(data);
+
+		List<Series> chartSeries = new ArrayList<Series>();
+		for (PingSeries series : data.values()) {
+			chartSeries.add(series.toChartSeries(maxPoints));
+		}
+		return chartSeries;
+	}
+
+	/**
+	 * @param data The series of a chart
+	 * @return Whether the chart downsamples any of the series
+	 */
+	public static boolean isDownsampled(Map<String, PingSeries> data) {
+
+		int maxPoints = getMaxPoints(data);
+		if (maxPoints <= 0) {
+			return false;
+		}
+		for (PingSeries series : data.values()) {
+			if (series.size() > maxPoints) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The share of the point budget of each series of a chart, or 0
+	 *         if series aren't downsampled
+	 */
+	private static int getMaxPoints(Map<String, PingSeries> data) {
+
+		if (PortletPropsValues.BEACONS_CHART_DOWNSAMPLE_POINTS <= 0 ||
+			data.isEmpty()) {
 
-		List<Series> containerDataSeries = new ArrayList<Series>();
-		for (String proxName : data.keySet()) {
-			ContainerDataSeries series = new ContainerDataSeries(data.get(proxName));
-			series.setName(proxName);
-			series.setYPropertyId("Number of Pings");
-			containerDataSeries.add(series);
+			return 0;
 		}
+		return Math.max(
+			3, PortletPropsValues.BEACONS_CHART_DOWNSAMPLE_POINTS / data.size());
+	}
 
-		configuration.setSeries(containerDataSeries);
-		chart.drawChart(configuration);
+	/**
+	 * Zoom the x axis of an open chart to a time range. Only the new extremes
+	 * are sent to the browser, not the chart's configuration or series.
+	 * 
+	 * @param chart A chart made by this class
+	 * @param fromTime The start of the range
+	 * @param toTime The end of the range
+	 */
+	public static void setTimeExtremes(Chart chart, long fromTime, long toTime) {
 
-		return chart;
+		chart.getConfiguration().getxAxis().setExtremes(fromTime, toTime);
 	}
 
 	/**
-	 * Get all the date stamps for a given event
+	 * Apply changed points to the series of an open chart. Existing points
+	 * are updated and new points appended, so only the changes are sent to
+	 * the browser; the chart is only redrawn if a series is new.
+	 * 
+	 * @param chart A chart made by this class
+	 * @param counts The changed counts, keyed by series name
+	 * @param fromIndex The index of the first changed point
+	 */
+	public static void updateChart(
+		Chart chart, Map<String, int[]> counts, int fromIndex) {
+
+		long start = System.nanoTime();
+		try {
+			Configuration configuration = chart.getConfiguration();
+
+			Map<String, Series> chartSeries = new HashMap<String, Series>();
+			for (Series series : configuration.getSeries()) {
+				chartSeries.put(series.getName(), series);
+			}
+
+			boolean redraw = false;
+			for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+				int[] values = entry.getValue();
+				Series existing = chartSeries.get(entry.getKey());
+
+				if (existing == null) {
+					Number[] data = new Number[fromIndex + values.length];
+					for (int i = 0; i < data.length; i++) {
+						data[i] = i < fromIndex ? 0 : values[i - fromIndex];
+					}
+					configuration.addSeries(new ListSeries(entry.getKey(), data));
+					redraw = true;
+					continue;
+				}
+
+				// downsampled points don't line up with buckets; the series is
+				// brought up to date the next time the chart is drawn
+				if (!(existing instanceof ListSeries)) {
+					continue;
+				}
+				ListSeries series = (ListSeries) existing;
+
+				int size = series.getData().length;
+
+				// buckets without pings in between
+				for (int i = size; i < fromIndex; i++) {
+					series.addData(0, true, false);
+				}
+				for (int i = 0; i < values.length; i++) {
+					int index = fromIndex + i;
+					if (index < size) {
+						series.updatePoint(index, values[i]);
+					}
+					else {
+						series.addData(values[i], true, false);
+					}
+				}
+			}
+
+			if (redraw) {
+				chart.drawChart(configuration);
+			}
+		}
+		finally {
+			BeaconMetrics.CHART_UPDATE_SECONDS.observeSince(start);
+		}
+	}
+
+	/**
+	 * The series of one chart all share the same point times, so they're set
+	 * once, on the chart's plot options. The x axis can't be zoomed in below
+	 * the resolution of the series.
+	 */
+	private static void setPointTimes(
+		Configuration configuration, AbstractPlotOptions plotOptions,
+		Map<String, PingSeries> data) {
+
+		if (data.isEmpty()) {
+			return;
+		}
+		PingSeries series = data.values().iterator().next();
+		plotOptions.setPointStart(series.getPointStart());
+		plotOptions.setPointInterval(series.getPointInterval());
+		configuration.getxAxis().setMinRange(series.getPointInterval());
+	}
+
+	/**
+	 * Record the size of the configuration of a chart that's about to be
+	 * sent to the browser, by serializing it the way the chart will. Only
+	 * one build in {@link #PAYLOAD_SAMPLE_INTERVAL} is measured, so the
+	 * extra serialization doesn't add to every build. Chart JSON is almost
+	 * all ASCII, so its length is counted as bytes.
+	 */
+	private static void measurePayload(Configuration configuration) {
+
+		if (chartBuilds.getAndIncrement() % PAYLOAD_SAMPLE_INTERVAL != 0) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		String json = ChartSerialization.toJSON(configuration);
+		BeaconMetrics.CHART_SERIALIZATION_SECONDS.observeSince(start);
+
+		BeaconMetrics.CHART_PAYLOAD_BYTES.observe(json.length());
+	}
+
+	/**
+	 * Get the first/last date, row count and bucket count of an event, from the
+	 * metadata cache if possible
 	 * @param companyId the company ID in which the data exists (in Expando)
 	 * @param event Name of event
-	 * @return A list of all date stamps, sorted chronologically
-	 * @throws PortalException if things go wrong
+	 * @return The metadata of the event
+	 * @throws PortalException if the event has no data
+	 * @throws SystemException if things go wrong
+	 */
+	public static BeaconEventMetadata getEventMetadata(
+		long companyId, String event)
+		throws PortalException, SystemException {
+
+		long start = System.nanoTime();
+		try {
+			BeaconEventMetadata metadata =
+				BeaconEventMetadataCache.get(companyId, event);
+			if (metadata != null) {
+				return metadata;
+			}
+
+			if (hasPingStore(companyId, event)) {
+				return getStoreMetadata(companyId, event, getPingStore(companyId, event));
+			}
+
+			return getEventMetadata(
+				companyId, event, getDateStampsForEvent(companyId, event));
+		}
+		finally {
+			BeaconMetrics.EVENT_METADATA_SECONDS.observeSince(start);
+		}
+	}
+
+	private static BeaconEventMetadata getStoreMetadata(
+		long companyId, String event, PingStore store)
+		throws PortalException {
+
+		BeaconEventMetadata metadata =
+			BeaconEventMetadataCache.get(companyId, event);
+		if (metadata != null) {
+			return metadata;
+		}
+
+		metadata = store.getMetadata();
+		if (metadata == null) {
+			throw new PortalException("No beacon data found for event " + event);
+		}
+
+		BeaconEventMetadataCache.put(companyId, event, metadata);
+		return metadata;
+	}
+
+	private static BeaconEventMetadata getEventMetadata(
+		long companyId, String event, List<ExpandoValue> dateStamps)
+		throws PortalException, SystemException {
+
+		BeaconEventMetadata metadata =
+			BeaconEventMetadataCache.get(companyId, event);
+		if (metadata != null) {
+			return metadata;
+		}
+
+		if (dateStamps.isEmpty()) {
+			throw new PortalException("No beacon data found for event " + event);
+		}
+
+		// a single min/max pass, no need to sort the whole column
+		long firstTime = Long.MAX_VALUE;
+		long lastTime = Long.MIN_VALUE;
+		for (ExpandoValue dateStamp : dateStamps) {
+			long time = dateStamp.getDate().getTime();
+			if (time < firstTime) {
+				firstTime = time;
+			}
+			if (time > lastTime) {
+				lastTime = time;
+			}
+		}
+
+		metadata = new BeaconEventMetadata(firstTime, lastTime, dateStamps.size());
+		BeaconEventMetadataCache.put(companyId, event, metadata);
+		return metadata;
+	}
+
+	/**
+	 * Get all the date stamps for a given event, in no particular order
+	 * @param companyId the company ID in which the data exists (in Expando)
+	 * @param event Name of event
+	 * @return A list of all date stamps
 	 * @throws SystemException if things go wrong
 	 */
 	private static List<ExpandoValue> getDateStampsForEvent(
 		long companyId, String event)
+		throws SystemException {
+
+		long start = System.nanoTime();
+		try {
+			return ExpandoValueLocalServiceUtil.getColumnValues(
+				companyId, BEACON_DATA_CLASS, event, BEACON_DATA_DATE_COL_NAME, -1,
+				-1);
+		}
+		finally {
+			observeQuery(start);
+		}
+	}
+
+	/**
+	 * Get the rollup of an event, building it with a full scan if this node
+	 * hasn't read the event yet. A stale rollup is returned as it is, while
+	 * its replacement is built in the background.
+	 * @param companyId the company ID in which the data exists (in Expando)
+	 * @param event Name of event
+	 * @param notifier Notified when the region data is ready during a scan
+	 * @return The rollup of the event; wait for it to complete before using
+	 *         it
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	private static EventRollup getEventRollup(
+		long companyId, String event, RegionChartDataNotifier notifier)
 		throws PortalException, SystemException {
 
-		List<ExpandoValue> dateStampOrig =
-			ExpandoValueLocalServiceUtil.getColumnValues(
-				companyId, BEACON_DATA_CLASS, event, BEACON_DATA_DATE_COL_NAME, -1, -1);
+		EventRollup rollup = EventRollupRegistry.get(companyId, event);
+		if (rollup != null) {
+			refreshRollup(companyId, event, rollup);
+			return rollup;
+		}
 
-		List<ExpandoValue> dateStamps = new ArrayList<ExpandoValue>();
-		dateStamps.addAll(dateStampOrig);
+		rollup = new EventRollup(getEventMetadata(companyId, event));
 
-		Collections.sort(dateStamps, new Comparator<ExpandoValue>() {
+		// register before scanning, so pings written during the scan are
+		// queued by the rollup rather than lost; the scan doesn't hold the
+		// rollup's lock, so writers aren't held up by it, and readers wait
+		// until the scan completes
+		EventRollup registered =
+			EventRollupRegistry.putIfAbsent(companyId, event, rollup);
+		if (registered != rollup) {
+			return registered;
+		}
+
+		boolean scanned = false;
+		try {
+			scanPings(companyId, event, rollup, notifier);
+			scanned = rollup.setComplete();
+		}
+		finally {
+			if (!scanned) {
+				rollup.setFailed();
+				EventRollupRegistry.remove(companyId, event, rollup);
+			}
+		}
+		return rollup;
+	}
+
+	/**
+	 * Start building the replacement of a complete rollup that has been
+	 * marked stale, on a {@link BeaconEventLoader} thread, unless it's
+	 * already being built. The replacement takes the stale rollup's place once
+	 * its scan is complete.
+	 */
+	private static void refreshRollup(
+		final long companyId, final String event, final EventRollup rollup) {
+
+		if (!rollup.isStale() || !rollup.isComplete()) {
+			return;
+		}
+
+		// the stale rollup's metadata misses the pings written elsewhere
+		BeaconEventMetadataCache.remove(companyId, event);
+
+		final EventRollup replacement;
+		try {
+			replacement = new EventRollup(getEventMetadata(companyId, event));
+		}
+		catch (Exception e) {
+			_log.error("Unable to read the metadata of event " + event, e);
+			return;
+		}
+
+		// register before scanning, so pings written during the scan are
+		// counted by both rollups
+		if (!rollup.setReplacement(replacement)) {
+			return;
+		}
+
+		Runnable refresh = new Runnable() {
 
 			@Override
-			public int compare(ExpandoValue ev1, ExpandoValue ev2) {
+			public void run() {
 
+				boolean scanned = false;
 				try {
-					Date d1 = ev1.getDate();
-					Date d2 = ev2.getDate();
-					return d1.compareTo(d2);
+					scanPings(
+						companyId, event, replacement,
+						new RegionChartDataNotifier(null, FIVE_MINUTES_IN_MILLIS));
+					scanned = replacement.setComplete();
+				}
+				catch (Exception e) {
+					_log.error("Unable to refresh the rollup of event " + event, e);
 				}
-				catch (Exception ex) {
-					return 0;
+				finally {
+					if (scanned && rollup.getReplacement() == replacement) {
+						EventRollupRegistry.replace(
+							companyId, event, rollup, replacement);
+					}
+					else {
+						replacement.setFailed();
+						rollup.removeReplacement();
+					}
 				}
 			}
-		});
-		return dateStamps;
+		};
+
+		try {
+			BeaconEventLoader.submit(refresh);
+		}
+		catch (RejectedExecutionException ree) {
+
+			// too many loads waiting; the next read tries again
+			rollup.removeReplacement();
+		}
 	}
 
 	/**
-	 * Get a raw representation of the beacon ping data, un-JSONified
+	 * Aggregate both the region and the beacon ping data, un-JSONified by a
+	 * streaming {@link PingJSONParser}. Each column of the event table is
+	 * fetched once, in bulk, and the columns are joined by classPK in memory.
+	 * The regions are aggregated first, so they can be shown while the beacons
+	 * column is fetched and parsed. The rows are read in time order, as the
+	 * event's {@link EventDateIndex} lists them, so the rollup can seal its
+	 * older buckets as the beacons pass advances.
 	 * 
 	 * @param companyId The companyID
 	 * @param event name of the event for which data is desired
-	 * @param dateStamps The dates of all pings to retrieve
-	 * @return A hierarchical map of pings based on dates
+	 * @param rollup The rollup to feed the pings to
+	 * @param notifier Notified when the region data is ready
 	 * @throws PortalException if things go wrong
 	 * @throws SystemException if things go wrong
 	 */
-	private static Map<String, Map<Long, Set<String>>> getRegionPingMap(
-		long companyId, String event, List<ExpandoValue> dateStamps)
+	private static void scanPings(
+		long companyId, String event, EventRollup rollup,
+		RegionChartDataNotifier notifier)
 		throws PortalException, SystemException {
 
-		ExpandoTable table =
-			ExpandoTableLocalServiceUtil.getTable(companyId, BEACON_DATA_CLASS, event);
-
-		long firstDate = dateStamps.get(0).getDate().getTime();
-
-		// [RegionName, [TimeBucket, [id, id, id, id]]]
-		Map<String, Map<Long, Set<String>>> regionPings =
-			new HashMap<String, Map<Long, Set<String>>>();
-		List<ExpandoRow> allRows =
-			ExpandoRowLocalServiceUtil.getRows(
-				companyId, BEACON_DATA_CLASS, event, -1, -1);
-
-		for (ExpandoRow row : allRows) {
-
-			Date rowDate =
-				ExpandoValueLocalServiceUtil.getValue(
-					companyId, BEACON_DATA_CLASS, table.getName(), "date",
-					row.getClassPK()).getDate();
-			String rowId =
-				ExpandoValueLocalServiceUtil.getValue(
-					companyId, BEACON_DATA_CLASS, table.getName(), "id", row.getClassPK()).getString();
-			String rowRegions =
-				ExpandoValueLocalServiceUtil.getValue(
-					companyId, BEACON_DATA_CLASS, table.getName(), "regions",
-					row.getClassPK()).getString();
-			Long timeBucket =
-				(rowDate.getTime() - firstDate) / FIVE_MINUTES_IN_MILLIS;
-			JSONArray regs = JSONFactoryUtil.createJSONArray(rowRegions);
-			for (int i = 0; i < regs.length(); i++) {
-				String reg = regs.getString(i).trim();
-				if (Validator.isNull(reg))
+		long start = System.nanoTime();
+		try {
+			PingAggregator aggregator = rollup.getAggregator();
+
+			// a store deleted while it was opened is read from the table
+			if (hasPingStore(companyId, event)) {
+				boolean scanned;
+				try {
+					scanned = getPingStore(companyId, event).scan(rollup, notifier);
+				}
+				catch (IOException e) {
+					throw new SystemException(e);
+				}
+				if (scanned) {
+					BeaconMetrics.ROWS_SCANNED.add(
+						rollup.getMetadata().getRowCount());
+					notifier.notify(rollup);
+					return;
+				}
+			}
+
+			// the rows in time order, from the event's date index
+			long[][] rows =
+				getDateIndex(companyId, event).getRows(
+					Long.MIN_VALUE, Long.MAX_VALUE);
+			long[] times = rows[0];
+			long[] classPKs = rows[1];
+			BeaconMetrics.ROWS_SCANNED.add(classPKs.length);
+
+			Map<Long, String> rowIds =
+				getColumnStrings(companyId, event, BEACON_DATA_ID_COL_NAME);
+			Map<Long, String> rowRegionsMap =
+				getColumnStrings(companyId, event, BEACON_DATA_REGIONS_COL_NAME);
+
+			PingJSONParser parser = new PingJSONParser();
+
+			// parsing feeds the aggregator as it goes, so they're timed together
+			long passStart = System.nanoTime();
+			for (int i = 0; i < classPKs.length; i++) {
+				notifier.checkCancelled(i);
+
+				// a row without an ID can't be told apart from other pings
+				long classPK = classPKs[i];
+				String pingId = rowIds.get(classPK);
+				if (pingId == null || !aggregator.beginPing(times[i], pingId)) {
 					continue;
-				Map<Long, Set<String>> pings = regionPings.get(reg);
-				if (pings != null) {
-					Set<String> pingStrs = pings.get(timeBucket);
-					if (pingStrs != null) {
-						pingStrs.add(rowId);
-					}
-					else {
-						pingStrs = new HashSet<String>();
-						pingStrs.add(rowId);
-						pings.put(timeBucket, pingStrs);
-					}
 				}
-				else {
-					pings = new HashMap<Long, Set<String>>();
-					Set<String> newPingStrs = new HashSet<String>();
-					newPingStrs.add(rowId);
-					pings.put(timeBucket, newPingStrs);
-					regionPings.put(reg, pings);
+
+				String rowRegions = rowRegionsMap.get(classPK);
+				if (Validator.isNotNull(rowRegions)) {
+					parser.parseRegions(rowRegions, aggregator);
 				}
 			}
+			BeaconMetrics.AGGREGATION_SECONDS.observeSince(passStart);
+
+			rowRegionsMap = null;
+			notifier.notify(rollup);
+
+			Map<Long, String> rowBeaconsMap =
+				getColumnStrings(companyId, event, BEACON_DATA_BEACONS_COL_NAME);
 
+			// the regions are all counted by now, so the buckets this pass
+			// leaves behind can be sealed
+			passStart = System.nanoTime();
+			for (int i = 0; i < classPKs.length; i++) {
+				notifier.checkCancelled(i);
+
+				rollup.scanned(times[i]);
+
+				long classPK = classPKs[i];
+				String pingId = rowIds.get(classPK);
+				if (pingId == null || !aggregator.beginPing(times[i], pingId)) {
+
+					continue;
+				}
+
+				String rowBeacons = rowBeaconsMap.get(classPK);
+				if (Validator.isNotNull(rowBeacons)) {
+					parser.parseBeacons(rowBeacons, aggregator);
+				}
+			}
+			BeaconMetrics.AGGREGATION_SECONDS.observeSince(passStart);
+		}
+		finally {
+			BeaconMetrics.SCAN_SECONDS.observeSince(start);
 		}
-		return regionPings;
 	}
 
 	/**
-	 * Get a raw representation of the beacon region ping data, un-JSONified
+	 * Aggregate the pings of a time range, reading only the rows in the range,
+	 * {@link #SCAN_CHUNK_SIZE} rows per query
 	 * 
 	 * @param companyId The companyID
 	 * @param event name of the event for which data is desired
-	 * @param dateStamps The dates of all pings to retrieve
-	 * @return A hierarchical map of pings based on dates
+	 * @param resolution The bucket width
+	 * @param fromTime The start of the range, inclusive
+	 * @param toTime The end of the range, exclusive
+	 * @return The aggregated pings
 	 * @throws PortalException if things go wrong
 	 * @throws SystemException if things go wrong
 	 */
-	private static Map<String, Map<String, Map<Long, Set<String>>>> getBeaconPingMap(
-		long companyId, String event, List<ExpandoValue> dateStamps)
+	private static PingAggregator scanRange(
+		long companyId, String event, long resolution, long fromTime,
+		long toTime)
 		throws PortalException, SystemException {
 
-		ExpandoTable table =
-			ExpandoTableLocalServiceUtil.getTable(companyId, BEACON_DATA_CLASS, event);
-
-		long firstDate = dateStamps.get(0).getDate().getTime();
-
-		// [BeaconName, [proximity, [TimeBucket, [id, id, id]]]]
-		Map<String, Map<String, Map<Long, Set<String>>>> beaconPings =
-			new HashMap<String, Map<String, Map<Long, Set<String>>>>();
-
-		List<ExpandoRow> allRows =
-			ExpandoRowLocalServiceUtil.getRows(
-				companyId, BEACON_DATA_CLASS, event, -1, -1);
-
-		for (ExpandoRow row : allRows) {
-
-			Date rowDate =
-				ExpandoValueLocalServiceUtil.getValue(
-					companyId, BEACON_DATA_CLASS, table.getName(), BEACON_DATA_DATE_COL_NAME,
-					row.getClassPK()).getDate();
-			String rowId =
-				ExpandoValueLocalServiceUtil.getValue(
-					companyId, BEACON_DATA_CLASS, table.getName(), BEACON_DATA_ID_COL_NAME, row.getClassPK()).getString();
-			String rowBeacons =
-				ExpandoValueLocalServiceUtil.getValue(
-					companyId, BEACON_DATA_CLASS, table.getName(), BEACON_DATA_BEACONS_COL_NAME,
-					row.getClassPK()).getString();
-			Long timeBucket =
-				(rowDate.getTime() - firstDate) / FIVE_MINUTES_IN_MILLIS;
-			JSONArray beacs = JSONFactoryUtil.createJSONArray(rowBeacons);
-
-			for (int i = 0; i < beacs.length(); i++) {
-				JSONObject beacPings = beacs.getJSONObject(i);
-				String beacName = beacPings.getString("beacon_name");
-				String beacProx = beacPings.getString("proximity");
-				Map<String, Map<Long, Set<String>>> beacMap = beaconPings.get(beacName);
-				if (beacMap != null) {
-					Map<Long, Set<String>> beacTimes = beacMap.get(beacProx);
-					if (beacTimes != null) {
-						Set<String> beacProxs = beacTimes.get(timeBucket);
-						if (beacProxs != null) {
-							beacProxs.add(rowId);
-						}
-						else {
-							beacProxs = new HashSet<String>();
-							beacProxs.add(rowId);
-							beacTimes.put(timeBucket, beacProxs);
-
-						}
+		long start = System.nanoTime();
+		try {
+			long[] classPKs =
+				getDateIndex(companyId, event).getClassPKs(fromTime, toTime);
+			BeaconMetrics.ROWS_SCANNED.add(classPKs.length);
+
+			PingAggregator aggregator = new PingAggregator(
+				new BeaconEventMetadata(fromTime, toTime - 1, classPKs.length),
+				new long[] {resolution});
+
+			ExpandoColumn dateColumn =
+				getColumn(companyId, event, BEACON_DATA_DATE_COL_NAME);
+			if (dateColumn == null) {
+				return aggregator;
+			}
+
+			long tableId = dateColumn.getTableId();
+			long dateColumnId = dateColumn.getColumnId();
+			long idColumnId = getColumnId(companyId, event, BEACON_DATA_ID_COL_NAME);
+			long regionsColumnId =
+				getColumnId(companyId, event, BEACON_DATA_REGIONS_COL_NAME);
+			long beaconsColumnId =
+				getColumnId(companyId, event, BEACON_DATA_BEACONS_COL_NAME);
+
+			Long[] columnIds = {
+				dateColumnId, idColumnId, regionsColumnId, beaconsColumnId};
+
+			PingJSONParser parser = new PingJSONParser();
+
+			for (int chunkStart = 0; chunkStart < classPKs.length;
+					chunkStart += SCAN_CHUNK_SIZE) {
+
+				int chunkSize =
+					Math.min(SCAN_CHUNK_SIZE, classPKs.length - chunkStart);
+
+				Long[] chunk = new Long[chunkSize];
+				Map<Long, Integer> rows = new HashMap<Long, Integer>(chunkSize * 2);
+				for (int i = 0; i < chunkSize; i++) {
+					chunk[i] = classPKs[chunkStart + i];
+					rows.put(chunk[i], i);
+				}
+
+				// one query per chunk of rows, for all of their columns
+				DynamicQuery dynamicQuery =
+					ExpandoValueLocalServiceUtil.dynamicQuery();
+				dynamicQuery.add(RestrictionsFactoryUtil.eq("tableId", tableId));
+				dynamicQuery.add(RestrictionsFactoryUtil.in("columnId", columnIds));
+				dynamicQuery.add(RestrictionsFactoryUtil.in("classPK", chunk));
+
+				long queryStart = System.nanoTime();
+				@SuppressWarnings("unchecked")
+				List<ExpandoValue> values =
+					ExpandoValueLocalServiceUtil.dynamicQuery(dynamicQuery);
+				observeQuery(queryStart);
+
+				Date[] dates = new Date[chunkSize];
+				String[] pingIds = new String[chunkSize];
+				String[] rowRegions = new String[chunkSize];
+				String[] rowBeacons = new String[chunkSize];
+				for (ExpandoValue value : values) {
+					int row = rows.get(value.getClassPK());
+					long columnId = value.getColumnId();
+					if (columnId == dateColumnId) {
+						dates[row] = value.getDate();
 					}
-					else {
-						beacTimes = new HashMap<Long, Set<String>>();
-						Set<String> newSet = new HashSet<String>();
-						newSet.add(rowId);
-						beacTimes.put(timeBucket, newSet);
-						beacMap.put(beacProx, beacTimes);
+					else if (columnId == idColumnId) {
+						pingIds[row] = value.getString();
+					}
+					else if (columnId == regionsColumnId) {
+						rowRegions[row] = value.getString();
+					}
+					else if (columnId == beaconsColumnId) {
+						rowBeacons[row] = value.getString();
 					}
 				}
-				else {
-					beacMap = new HashMap<String, Map<Long, Set<String>>>();
-					Map<Long, Set<String>> newBeacs = new HashMap<Long, Set<String>>();
-					Set<String> newSet = new HashSet<String>();
-					newSet.add(rowId);
-					newBeacs.put(timeBucket, newSet);
-					beacMap.put(beacProx, newBeacs);
-					beaconPings.put(beacName, beacMap);
+
+				// in time order, as the index returned them; a row without
+				// an ID can't be told apart from other pings
+				for (int row = 0; row < chunkSize; row++) {
+					if (dates[row] == null || pingIds[row] == null ||
+						!aggregator.beginPing(dates[row].getTime(), pingIds[row])) {
+
+						continue;
+					}
+					if (Validator.isNotNull(rowRegions[row])) {
+						parser.parseRegions(rowRegions[row], aggregator);
+					}
+					if (Validator.isNotNull(rowBeacons[row])) {
+						parser.parseBeacons(rowBeacons[row], aggregator);
+					}
 				}
 			}
-		}
 
-		return beaconPings;
+			return aggregator;
+		}
+		finally {
+			BeaconMetrics.SCAN_SECONDS.observeSince(start);
+		}
 	}
 
 	/**
-	 * Clear the Beacon Expando data tables we use
-	 * @param companyId the ID of the company (duh)
-	 * @throws Exception if things go wrong
+	 * Get the date index of an event, building it from the event's date
+	 * column if this node hasn't read a time range of the event yet
+	 * @param companyId the company ID in which the data exists (in Expando)
+	 * @param event Name of event
+	 * @return The complete index of the event
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
 	 */
-	public static void clearFakeData(long companyId)
-		throws Exception {
+	private static EventDateIndex getDateIndex(long companyId, String event)
+		throws PortalException, SystemException {
 
-		List<ExpandoTable> allTables =
-			ExpandoTableLocalServiceUtil.getExpandoTables(-1, -1);
+		while (true) {
+			EventDateIndex index = EventDateIndexCache.get(companyId, event);
 
-		List<String> allCurrentEvents = new ArrayList<String>();
-		for (ExpandoTable tbl : allTables) {
-			if (!BEACON_DATA_CLASS.equals(tbl.getClassName())) {
-				continue;
+			if (index == null) {
+				index = new EventDateIndex();
+
+				// register before reading, so rows written meanwhile are
+				// added to it rather than lost; the read rows are merged in,
+				// so writers aren't held up by the read
+				EventDateIndex registered =
+					EventDateIndexCache.putIfAbsent(companyId, event, index);
+				if (registered == index) {
+					buildDateIndex(companyId, event, index);
+					return index;
+				}
+				index = registered;
+			}
+
+			if (index.awaitComplete()) {
+				return index;
 			}
 
-			String name = tbl.getName();
-			allCurrentEvents.add(name);
+			// the build of an index we waited for failed, try again
 		}
+	}
 
-		for (String fakeEvent : allCurrentEvents) {
+	private static void buildDateIndex(
+		long companyId, String event, EventDateIndex index)
+		throws PortalException, SystemException {
 
-			ExpandoTable tbl =
-				ExpandoTableLocalServiceUtil.getTable(
-					companyId, BEACON_DATA_CLASS, fakeEvent);
+		boolean built = false;
+		try {
+			List<ExpandoValue> dateStamps = getDateStampsForEvent(companyId, event);
 
-			ExpandoValueLocalServiceUtil.deleteTableValues(tbl.getTableId());
+			long[] times = new long[dateStamps.size()];
+			long[] classPKs = new long[dateStamps.size()];
+			for (int i = 0; i < times.length; i++) {
+				ExpandoValue dateStamp = dateStamps.get(i);
+				times[i] = dateStamp.getDate().getTime();
+				classPKs[i] = dateStamp.getClassPK();
+			}
 
-			List<ExpandoRow> rows =
-				ExpandoRowLocalServiceUtil.getRows(
-					companyId, BEACON_DATA_CLASS, fakeEvent, -1, -1);
-			for (ExpandoRow row : rows) {
-				ExpandoRowLocalServiceUtil.deleteRow(row.getRowId());
+			index.addAll(times, classPKs);
+			index.setComplete();
+			built = true;
+		}
+		finally {
+			if (!built) {
+				EventDateIndexCache.remove(companyId, event, index);
+				index.setFailed();
 			}
-			ExpandoTableLocalServiceUtil.deleteTable(tbl.getTableId());
+		}
+	}
+
+	private static ExpandoColumn getColumn(
+		long companyId, String event, String columnName)
+		throws SystemException {
+
+		long start = System.nanoTime();
+		ExpandoColumn column = ExpandoColumnLocalServiceUtil.getColumn(
+			companyId, BEACON_DATA_CLASS, event, columnName);
+		observeQuery(start);
+
+		return column;
+	}
+
+	private static long getColumnId(
+		long companyId, String event, String columnName)
+		throws SystemException {
+
+		ExpandoColumn column = getColumn(companyId, event, columnName);
+
+		return column != null ? column.getColumnId() : -1;
+	}
+
+	private static void observeQuery(long startNanos) {
+
+		BeaconMetrics.EXPANDO_QUERIES.increment();
+		BeaconMetrics.EXPANDO_QUERY_SECONDS.observeSince(startNanos);
+	}
+
+	private static boolean hasPingStore(long companyId, String event) {
+
+		return PingStore.isEnabled() && PingStore.exists(companyId, event);
+	}
+
+	private static PingStore getPingStore(long companyId, String event)
+		throws SystemException {
+
+		try {
+			return PingStore.getStore(companyId, event);
+		}
+		catch (IOException e) {
+			throw new SystemException(e);
+		}
+	}
+
+	/**
+	 * Fetch every value of a string column in one query
+	 * 
+	 * @param companyId The companyID
+	 * @param event name of the event (table) for which data is desired
+	 * @param columnName name of the column to fetch
+	 * @return The column values, keyed by row classPK
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	private static Map<Long, String> getColumnStrings(
+		long companyId, String event, String columnName)
+		throws PortalException, SystemException {
+
+		long start = System.nanoTime();
+		List<ExpandoValue> values =
+			ExpandoValueLocalServiceUtil.getColumnValues(
+				companyId, BEACON_DATA_CLASS, event, columnName, -1, -1);
+		observeQuery(start);
+
+		Map<Long, String> result = new HashMap<Long, String>(values.size() * 2);
+		for (ExpandoValue value : values) {
+			result.put(value.getClassPK(), value.getString());
+		}
+		return result;
+	}
+
+	/**
+	 * Clear the Beacon Expando data tables we use
+	 * @param companyId the ID of the company (duh)
+	 * @throws Exception if things go wrong
+	 */
+	public static void clearFakeData(long companyId)
+		throws Exception {
+
+		clearFakeData(companyId, null);
+	}
+
+	/**
+	 * Clear the Beacon Expando data tables we use, a chunk of rows at a time
+	 * @param companyId the ID of the company (duh)
+	 * @param listener notified after each chunk of rows, may be null
+	 * @throws Exception if things go wrong
+	 */
+	public static void clearFakeData(
+		long companyId, PurgeProgressListener listener)
+		throws Exception {
+
+		// a copy, as purging an event invalidates the catalog
+		List<String> allCurrentEvents =
+			new ArrayList<String>(getAllEvents(companyId));
 
+		for (String fakeEvent : allCurrentEvents) {
+			BeaconPurgeService.purgeEvent(companyId, fakeEvent, listener);
 		}
 
 	}
@@ -641,105 +1605,73 @@ public class BeaconExpandoDataUtil {
 
 		clearFakeData(companyId);
 
-		String[] fakeEvents =
-			new String[] {
-				"Benelux Solutions Forum", "France Symposium",
-				"North America Symposium", "DevCon Frankfurt"
-			};
-
-		for (String fakeEvent : fakeEvents) {
-
-			ExpandoTable fakeTable =
-				ExpandoTableLocalServiceUtil.addTable(
-					companyId, BEACON_DATA_CLASS, fakeEvent);
-			ExpandoColumnLocalServiceUtil.addColumn(
-				fakeTable.getTableId(), BEACON_DATA_DATE_COL_NAME,
-				BEACON_DATA_DATE_COL_TYPE);
-			ExpandoColumnLocalServiceUtil.addColumn(
-				fakeTable.getTableId(), BEACON_DATA_BEACONS_COL_NAME,
-				BEACON_DATA_STR_COL_TYPE);
-			ExpandoColumnLocalServiceUtil.addColumn(
-				fakeTable.getTableId(), BEACON_DATA_REGIONS_COL_NAME,
-				BEACON_DATA_STR_COL_TYPE);
-			ExpandoColumnLocalServiceUtil.addColumn(
-				fakeTable.getTableId(), BEACON_DATA_ID_COL_NAME,
-				BEACON_DATA_STR_COL_TYPE);
-
-			Date now = new Date();
-			String[] proximities = new String[] {
-				"near", "far", "immediate"
-			};
-			String[] regions = new String[] {
-				"Venue", "Registration", "Partners", "Grand Ballroom", "Bar"
-			};
-			String[] beacons =
-				new String[] {
-					"Componence", "GFI", "Smile", "iProfs", "SQLI", "CGI", "ORANGE",
-					"Mystery Guest"
-				};
-
-			for (int i = 0; i < 70; i++) {
-				int people = (int) Math.floor(Math.random() * 100);
-				if (i > 23 && i < 30)
-					people = (int) ((double) people * 4);
-				if (i > 50 && i < 60)
-					people = (int) ((double) people * 3);
-				if (i > 40 && i < 42)
-					people = (int) ((double) people * 2);
-				if (i > 60 && i < 64)
-					people = (int) ((double) people * 3);
-				for (int p = 0; p < people; p++) {
-					int numRegions =
-						(int) Math.floor(Math.random() * (regions.length + 1));
-					if (i == 23 || i == 70) {
-						numRegions += 5;
-					}
-					int numBeacons =
-						(int) Math.floor(Math.random() * (beacons.length + 1));
-					String id = Double.toString(Math.random());
-					long newTime = now.getTime() + (i * (5 * 60 * 1000));
-					Date newDate = new Date(newTime);
-					long classPK = (fakeEvent + id + newDate.getTime()).hashCode();
-					JSONArray regArr = JSONFactoryUtil.createJSONArray();
-					JSONArray beacArr = JSONFactoryUtil.createJSONArray();
-					for (int r = 0; r < numRegions; r++) {
-						regArr.put(regions[(int) (Math.random() * regions.length)]);
-					}
-					if (i < 15) {
-						for (int e = 0; e < 30; e++) {
-							regArr.put(regions[3]);
-						}
-					}
-					if (i > 40 && i < 55) {
-						for (int e = 0; e < 250; e++) {
-							regArr.put(regions[2]);
-						}
-					}
+		BeaconDataGenerator.getDemoGenerator().generate(
+			BeaconDataGenerator.getIngestSink(companyId));
+	}
 
-					for (int r = 0; r < numBeacons; r++) {
-						JSONObject obj = JSONFactoryUtil.createJSONObject();
-						obj.put(
-							"beacon_name", beacons[(int) (Math.random() * beacons.length)]);
-						obj.put(
-							"proximity",
-							proximities[(int) (Math.random() * proximities.length)]);
-						beacArr.put(obj);
-					}
-					ExpandoValueLocalServiceUtil.addValue(
-						companyId, BEACON_DATA_CLASS, fakeEvent, BEACON_DATA_DATE_COL_NAME,
-						classPK, newDate);
-					ExpandoValueLocalServiceUtil.addValue(
-						companyId, BEACON_DATA_CLASS, fakeEvent, BEACON_DATA_ID_COL_NAME,
-						classPK, id);
-					ExpandoValueLocalServiceUtil.addValue(
-						companyId, BEACON_DATA_CLASS, fakeEvent,
-						BEACON_DATA_BEACONS_COL_NAME, classPK, beacArr.toString());
-					ExpandoValueLocalServiceUtil.addValue(
-						companyId, BEACON_DATA_CLASS, fakeEvent,
-						BEACON_DATA_REGIONS_COL_NAME, classPK, regArr.toString());
-				}
+	/**
+	 * Passes the region series of one chart data load to its listener, once,
+	 * and lets the listener cancel the scan
+	 */
+	private static class RegionChartDataNotifier implements ScanMonitor {
+
+		private final BeaconEventDataListener listener;
+		private final long resolution;
+		private boolean notified;
+
+		private RegionChartDataNotifier(
+			BeaconEventDataListener listener, long resolution) {
+
+			this.listener = listener;
+			this.resolution = resolution;
+		}
+
+		@Override
+		public void checkCancelled(int scanned) {
+
+			if ((scanned & 1023) == 0 && listener != null &&
+				listener.isCancelled()) {
+
+				throw new CancellationException("Load cancelled");
+			}
+		}
+
+		/**
+		 * Notify the listener with the region series of a rollup; called by
+		 * the thread scanning it, the only one using it until it's complete
+		 */
+		private void notify(EventRollup rollup) {
+
+			if (notified || listener == null) {
+				return;
 			}
+			PingAggregator aggregator = rollup.getAggregator();
+			notify(
+				Collections.unmodifiableMap(
+					buildRegionSeries(aggregator, resolution)),
+				new Date(aggregator.getFirstBucketTime(resolution)),
+				rollup.getMetadata().getLastDate());
 		}
 
+		private void notify(BeaconEventData data) {
+
+			if (notified || listener == null) {
+				return;
+			}
+			notify(
+				data.getRegionChartData(), data.getFirstDate(),
+				data.getLastDate());
+		}
+
+		private void notify(
+			Map<String, PingSeries> regionChartData, Date firstDate,
+			Date lastDate) {
+
+			notified = true;
+			listener.onRegionChartData(regionChartData, firstDate, lastDate);
+		}
 	}
+
+	private static Log _log = LogFactoryUtil.getLog(BeaconExpandoDataUtil.class);
+
 }
@@ -0,0 +1,239 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.liferay.counter.service.CounterLocalServiceUtil;
+import com.liferay.portal.kernel.exception.PortalException;
+import com.liferay.portal.kernel.exception.SystemException;
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.util.PortalUtil;
+import com.liferay.portlet.expando.model.ExpandoColumn;
+import com.liferay.portlet.expando.model.ExpandoTable;
+import com.liferay.portlet.expando.service.ExpandoColumnLocalServiceUtil;
+import com.liferay.portlet.expando.service.ExpandoTableLocalServiceUtil;
+import com.liferay.portlet.expando.service.ExpandoValueLocalServiceUtil;
+
+/**
+ * Writes batches of pings reported by gateways into the event's Expando
+ * table, and keeps the columnar store and the event rollup in step with it.
+ * The event's table and columns are resolved once and cached, and class PKs
+ * are reserved a whole batch at a time.
+ * <p>
+ * Only events created by this service get a columnar store, as the store
+ * must hold every ping of its event; older events are read from their
+ * tables. If a batch fails part way through, the event's store and rollup
+ * are dropped, as they can't tell which of its rows were written. The other
+ * nodes of a cluster are told to drop theirs after every batch.
+ * 
+ * @author James Falkner
+ */
+public class BeaconIngestService {
+
+	private static final ConcurrentMap<String, EventTable> eventTables =
+		new ConcurrentHashMap<String, EventTable>();
+
+	/**
+	 * Store a list of pings for an event, creating the event's table if it
+	 * doesn't exist yet
+	 * 
+	 * @param companyId The company ID under which the data is stored
+	 * @param event The event name
+	 * @param pings The pings to store
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	public static void ingest(long companyId, String event, List<Ping> pings)
+		throws PortalException, SystemException {
+
+		if (pings.isEmpty()) {
+			return;
+		}
+
+		EventTable table = getEventTable(companyId, event);
+
+		int batchSize = PortletPropsValues.BEACONS_INGEST_BATCH_SIZE;
+		for (int from = 0; from < pings.size(); from += batchSize) {
+			int to = Math.min(from + batchSize, pings.size());
+			writeBatch(companyId, event, table, pings.subList(from, to));
+		}
+	}
+
+	/**
+	 * Forget the cached table of an event, after the table has been added or
+	 * deleted on this node or another one
+	 * @param companyId The company ID under which the data is stored
+	 * @param event The event name
+	 */
+	public static void removeEventTable(long companyId, String event) {
+
+		eventTables.remove(getKey(companyId, event));
+	}
+
+	private static void writeBatch(
+		long companyId, String event, EventTable table, List<Ping> batch)
+		throws PortalException, SystemException {
+
+		long classPK =
+			CounterLocalServiceUtil.increment(
+				BeaconExpandoDataUtil.BEACON_DATA_CLASS, batch.size()) -
+				batch.size() + 1;
+
+		EventDateIndex dateIndex = EventDateIndexCache.get(companyId, event);
+
+		boolean written = false;
+		try {
+
+			// each row is written by a single service call, one transaction per
+			// row instead of one per value
+			Map<String, String> data = new HashMap<String, String>();
+			for (Ping ping : batch) {
+				data.put(
+					BeaconExpandoDataUtil.BEACON_DATA_DATE_COL_NAME,
+					String.valueOf(ping.getTime()));
+				data.put(
+					BeaconExpandoDataUtil.BEACON_DATA_ID_COL_NAME, ping.getId());
+				data.put(
+					BeaconExpandoDataUtil.BEACON_DATA_REGIONS_COL_NAME,
+					ping.getRegionsJSON());
+				data.put(
+					BeaconExpandoDataUtil.BEACON_DATA_BEACONS_COL_NAME,
+					ping.getBeaconsJSON());
+
+				ExpandoValueLocalServiceUtil.addValues(
+					table.classNameId, table.tableId, table.columns, classPK,
+					data);
+
+				if (dateIndex != null) {
+					dateIndex.add(ping.getTime(), classPK);
+				}
+				classPK++;
+			}
+
+			// a store that doesn't exist would be missing the earlier pings
+			if (PingStore.isEnabled() && PingStore.exists(companyId, event)) {
+				try {
+					PingStore.getStore(companyId, event).append(batch);
+				}
+				catch (IOException e) {
+
+					// the rows are in the table, so the event is read from
+					// there once its store is dropped
+					_log.warn(
+						"Dropping the columnar store of event " + event + ": " +
+							e.getMessage());
+
+					PingStore.delete(companyId, event);
+				}
+			}
+			written = true;
+		}
+		finally {
+			if (!written) {
+
+				// the rows written so far are only in the table, so read the
+				// event from there from now on
+				PingStore.delete(companyId, event);
+				EventRollupRegistry.remove(companyId, event);
+			}
+			EventInvalidator.eventWritten(companyId, event);
+		}
+
+		EventRollupRegistry.addPings(companyId, event, batch);
+	}
+
+	private static EventTable getEventTable(long companyId, String event)
+		throws PortalException, SystemException {
+
+		String key = getKey(companyId, event);
+		EventTable eventTable = eventTables.get(key);
+		if (eventTable != null) {
+			return eventTable;
+		}
+
+		synchronized (eventTables) {
+			eventTable = eventTables.get(key);
+			if (eventTable != null) {
+				return eventTable;
+			}
+
+			long classNameId =
+				PortalUtil.getClassNameId(BeaconExpandoDataUtil.BEACON_DATA_CLASS);
+			ExpandoTable table =
+				ExpandoTableLocalServiceUtil.fetchTable(
+					companyId, classNameId, event);
+			if (table == null) {
+				table = addEventTable(companyId, event);
+
+				// a new event can be kept in the store from its first ping
+				if (PingStore.isEnabled()) {
+					try {
+						PingStore.create(companyId, event);
+					}
+					catch (IOException e) {
+						throw new SystemException(e);
+					}
+				}
+			}
+
+			eventTable =
+				new EventTable(
+					classNameId, table.getTableId(),
+					ExpandoColumnLocalServiceUtil.getColumns(table.getTableId()));
+			eventTables.put(key, eventTable);
+			return eventTable;
+		}
+	}
+
+	private static ExpandoTable addEventTable(long companyId, String event)
+		throws PortalException, SystemException {
+
+		ExpandoTable table =
+			ExpandoTableLocalServiceUtil.addTable(
+				companyId, BeaconExpandoDataUtil.BEACON_DATA_CLASS, event);
+		ExpandoColumnLocalServiceUtil.addColumn(
+			table.getTableId(), BeaconExpandoDataUtil.BEACON_DATA_DATE_COL_NAME,
+			BeaconExpandoDataUtil.BEACON_DATA_DATE_COL_TYPE);
+		ExpandoColumnLocalServiceUtil.addColumn(
+			table.getTableId(), BeaconExpandoDataUtil.BEACON_DATA_BEACONS_COL_NAME,
+			BeaconExpandoDataUtil.BEACON_DATA_STR_COL_TYPE);
+		ExpandoColumnLocalServiceUtil.addColumn(
+			table.getTableId(), BeaconExpandoDataUtil.BEACON_DATA_REGIONS_COL_NAME,
+			BeaconExpandoDataUtil.BEACON_DATA_STR_COL_TYPE);
+		ExpandoColumnLocalServiceUtil.addColumn(
+			table.getTableId(), BeaconExpandoDataUtil.BEACON_DATA_ID_COL_NAME,
+			BeaconExpandoDataUtil.BEACON_DATA_STR_COL_TYPE);
+		return table;
+	}
+
+	private static String getKey(long companyId, String event) {
+
+		return companyId + "#" + event;
+	}
+
+	/**
+	 * The resolved Expando table and columns of an event
+	 */
+	private static class EventTable {
+
+		final long classNameId;
+		final long tableId;
+		final List<ExpandoColumn> columns;
+
+		EventTable(long classNameId, long tableId, List<ExpandoColumn> columns) {
+
+			this.classNameId = classNameId;
+			this.tableId = tableId;
+			this.columns = columns;
+		}
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(BeaconIngestService.class);
+
+}
@@ -0,0 +1,192 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of the data access and rendering paths: timers of the public
+ * methods of {@link BeaconExpandoDataUtil} and of the stages of a scan,
+ * counts of rows scanned, Expando queries issued and buckets produced, the
+ * size of chart payloads, and the UI latency of selections. The metrics are
+ * exposed as MBeans and in the Prometheus text format.
+ *
+ * @author James Falkner
+ */
+public class BeaconMetrics {
+
+	public static final String JMX_DOMAIN = "com.liferay.beaconexample";
+
+	private static final List<Metric> metrics = new ArrayList<Metric>();
+
+	// data access
+
+	public static final MetricHistogram EVENT_CATALOG_SECONDS = timer(
+		"beacons_event_catalog_seconds", "Time to list the events of a company");
+
+	public static final MetricHistogram EVENT_METADATA_SECONDS = timer(
+		"beacons_event_metadata_seconds",
+		"Time to get the first and last ping times of an event");
+
+	public static final MetricHistogram CHART_DATA_SECONDS = timer(
+		"beacons_chart_data_seconds",
+		"Time to get the region chart data of an event, including any scan");
+
+	public static final MetricHistogram BEACON_CHART_DATA_SECONDS = timer(
+		"beacons_beacon_chart_data_seconds",
+		"Time to get the proximity chart data of a beacon, including any scan");
+
+	public static final MetricHistogram RANGE_CHART_DATA_SECONDS = timer(
+		"beacons_range_chart_data_seconds",
+		"Time to get the chart data of a time range of an event");
+
+	public static final MetricHistogram SCAN_SECONDS = timer(
+		"beacons_scan_seconds",
+		"Time to scan the rows of an event or of a time range");
+
+	public static final MetricHistogram EXPANDO_QUERY_SECONDS = timer(
+		"beacons_expando_query_seconds", "Time spent in an Expando query");
+
+	public static final MetricHistogram AGGREGATION_SECONDS = timer(
+		"beacons_aggregation_seconds",
+		"Time to parse and count the pings of a scan pass, without queries");
+
+	public static final MetricHistogram SERIES_BUILD_SECONDS = timer(
+		"beacons_series_build_seconds",
+		"Time to build chart series from aggregated pings");
+
+	public static final MetricCounter ROWS_SCANNED = counter(
+		"beacons_rows_scanned_total", "Rows read by scans");
+
+	public static final MetricCounter EXPANDO_QUERIES = counter(
+		"beacons_expando_queries_total", "Expando queries issued");
+
+	public static final MetricCounter BUCKETS_PRODUCED = counter(
+		"beacons_buckets_produced_total", "Buckets of the chart series built");
+
+	// rendering
+
+	public static final MetricHistogram CHART_BUILD_SECONDS = timer(
+		"beacons_chart_build_seconds",
+		"Time to build a chart, or to replace its series");
+
+	public static final MetricHistogram CHART_UPDATE_SECONDS = timer(
+		"beacons_chart_update_seconds",
+		"Time to apply live updates to an open chart");
+
+	public static final MetricHistogram CHART_SERIALIZATION_SECONDS = timer(
+		"beacons_chart_serialization_seconds",
+		"Time to serialize the configuration of a chart, sampled from one build in 32");
+
+	public static final MetricHistogram CHART_PAYLOAD_BYTES = histogram(
+		"beacons_chart_payload_bytes",
+		"Size of the serialized configuration of a chart, sampled from one build in 32",
+		MetricHistogram.BYTES_BOUNDS);
+
+	public static final MetricHistogram CONTAINER_BUILD_SECONDS = timer(
+		"beacons_container_build_seconds",
+		"Time to make the container of the ping table");
+
+	public static final MetricHistogram UI_REGION_SELECT_SECONDS = timer(
+		"beacons_ui_region_select_seconds",
+		"Time from selecting an event to its region chart being attached");
+
+	public static final MetricHistogram UI_PROXIMITY_SELECT_SECONDS = timer(
+		"beacons_ui_proximity_select_seconds",
+		"Time from selecting a beacon to its proximity chart being attached");
+
+	/**
+	 * @return Every metric
+	 */
+	public static List<Metric> getMetrics() {
+
+		return Collections.unmodifiableList(metrics);
+	}
+
+	/**
+	 * Write every metric in the Prometheus text format
+	 * @param writer Where to write them
+	 * @throws IOException if the writer fails
+	 */
+	public static void writePrometheus(Writer writer)
+		throws IOException {
+
+		for (Metric metric : metrics) {
+			metric.writePrometheus(writer);
+		}
+	}
+
+	/**
+	 * Register an MBean per metric with the platform MBean server, replacing
+	 * those of a previous deployment
+	 * @throws JMException if things go wrong
+	 */
+	public static void registerMBeans()
+		throws JMException {
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		for (Metric metric : metrics) {
+			ObjectName objectName = getObjectName(metric);
+			try {
+				server.registerMBean(metric, objectName);
+			}
+			catch (InstanceAlreadyExistsException iaee) {
+				server.unregisterMBean(objectName);
+				server.registerMBean(metric, objectName);
+			}
+		}
+	}
+
+	/**
+	 * Unregister the MBeans of the metrics
+	 * @throws JMException if things go wrong
+	 */
+	public static void unregisterMBeans()
+		throws JMException {
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+		for (Metric metric : metrics) {
+			ObjectName objectName = getObjectName(metric);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		}
+	}
+
+	private static ObjectName getObjectName(Metric metric)
+		throws JMException {
+
+		return new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + metric.getName());
+	}
+
+	private static MetricHistogram timer(String name, String help) {
+
+		return histogram(name, help, MetricHistogram.SECONDS_BOUNDS);
+	}
+
+	private static MetricHistogram histogram(
+		String name, String help, double[] bounds) {
+
+		MetricHistogram histogram = new MetricHistogram(name, help, bounds);
+		metrics.add(histogram);
+		return histogram;
+	}
+
+	private static MetricCounter counter(String name, String help) {
+
+		MetricCounter counter = new MetricCounter(name, help);
+		metrics.add(counter);
+		return counter;
+	}
+}
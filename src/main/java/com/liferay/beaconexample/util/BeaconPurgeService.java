@@ -0,0 +1,194 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+import com.liferay.portal.kernel.exception.PortalException;
+import com.liferay.portal.kernel.exception.SystemException;
+import com.liferay.portal.util.PortalUtil;
+import com.liferay.portlet.expando.model.ExpandoRow;
+import com.liferay.portlet.expando.model.ExpandoTable;
+import com.liferay.portlet.expando.model.ExpandoValue;
+import com.liferay.portlet.expando.service.ExpandoRowLocalServiceUtil;
+import com.liferay.portlet.expando.service.ExpandoTableLocalServiceUtil;
+import com.liferay.portlet.expando.service.ExpandoValueLocalServiceUtil;
+
+/**
+ * Deletes the pings of an event, either all of them or those within a time
+ * range. Rows are loaded and deleted a chunk at a time, so memory use is
+ * bounded by the chunk size no matter how large the event is, and each chunk
+ * is a short unit of work that doesn't hold up other portal requests.
+ * 
+ * @author James Falkner
+ */
+public class BeaconPurgeService {
+
+	/**
+	 * Delete all pings of an event, and the event itself
+	 * 
+	 * @param companyId The company ID under which the data is stored
+	 * @param event The event name
+	 * @param listener Notified after each chunk, may be null
+	 * @return The number of pings deleted
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	public static long purgeEvent(
+		long companyId, String event, PurgeProgressListener listener)
+		throws PortalException, SystemException {
+
+		return purgeEvent(companyId, event, null, null, listener);
+	}
+
+	/**
+	 * Delete the pings of an event within a time range. If both ends of the
+	 * range are null, the event itself is deleted as well.
+	 * 
+	 * @param companyId The company ID under which the data is stored
+	 * @param event The event name
+	 * @param from The start of the range (inclusive), or null for no start
+	 * @param to The end of the range (exclusive), or null for no end
+	 * @param listener Notified after each chunk, may be null
+	 * @return The number of pings deleted
+	 * @throws PortalException if things go wrong
+	 * @throws SystemException if things go wrong
+	 */
+	public static long purgeEvent(
+		long companyId, String event, Date from, Date to,
+		PurgeProgressListener listener)
+		throws PortalException, SystemException {
+
+		ExpandoTable table =
+			ExpandoTableLocalServiceUtil.fetchTable(
+				companyId,
+				PortalUtil.getClassNameId(BeaconExpandoDataUtil.BEACON_DATA_CLASS),
+				event);
+
+		long purged = 0;
+		try {
+			if (table == null) {
+				return 0;
+			}
+			if (from == null && to == null) {
+				purged = purgeAll(table, event, listener);
+			}
+			else {
+				purged =
+					purgeRange(
+						companyId, table, event,
+						from != null ? from.getTime() : Long.MIN_VALUE,
+						to != null ? to.getTime() : Long.MAX_VALUE, listener);
+			}
+		}
+		finally {
+			purgeDerivedData(companyId, event, from, to);
+		}
+		return purged;
+	}
+
+	private static long purgeAll(
+		ExpandoTable table, String event, PurgeProgressListener listener)
+		throws PortalException, SystemException {
+
+		int chunkSize = PortletPropsValues.BEACONS_PURGE_CHUNK_SIZE;
+		long total = ExpandoRowLocalServiceUtil.getRowsCount(table.getTableId());
+		long purged = 0;
+
+		// deleted rows drop out of the result, so always read the first chunk
+		List<ExpandoRow> rows;
+		do {
+			rows =
+				ExpandoRowLocalServiceUtil.getRows(table.getTableId(), 0, chunkSize);
+			for (ExpandoRow row : rows) {
+				ExpandoRowLocalServiceUtil.deleteRow(row);
+			}
+			purged += rows.size();
+			notify(listener, event, purged, total, purged);
+		}
+		while (rows.size() == chunkSize);
+
+		ExpandoValueLocalServiceUtil.deleteTableValues(table.getTableId());
+		ExpandoTableLocalServiceUtil.deleteTable(table.getTableId());
+		return purged;
+	}
+
+	private static long purgeRange(
+		long companyId, ExpandoTable table, String event, long from, long to,
+		PurgeProgressListener listener)
+		throws PortalException, SystemException {
+
+		int chunkSize = PortletPropsValues.BEACONS_PURGE_CHUNK_SIZE;
+		long total = ExpandoRowLocalServiceUtil.getRowsCount(table.getTableId());
+		long scanned = 0;
+		long purged = 0;
+		int start = 0;
+
+		List<ExpandoValue> dateStamps;
+		do {
+			dateStamps =
+				ExpandoValueLocalServiceUtil.getColumnValues(
+					companyId, BeaconExpandoDataUtil.BEACON_DATA_CLASS, event,
+					BeaconExpandoDataUtil.BEACON_DATA_DATE_COL_NAME, start,
+					start + chunkSize);
+
+			int deleted = 0;
+			for (ExpandoValue dateStamp : dateStamps) {
+				long time = dateStamp.getDate().getTime();
+				if (time >= from && time < to) {
+					ExpandoRowLocalServiceUtil.deleteRow(
+						table.getTableId(), dateStamp.getClassPK());
+					deleted++;
+				}
+			}
+
+			// deleted rows drop out of the result, the rest shift down
+			start += dateStamps.size() - deleted;
+			scanned += dateStamps.size();
+			purged += deleted;
+			notify(listener, event, scanned, total, purged);
+		}
+		while (dateStamps.size() == chunkSize);
+
+		return purged;
+	}
+
+	/**
+	 * Bring the columnar store, rollup and caches of the event in line with
+	 * the purged Expando data
+	 */
+	private static void purgeDerivedData(
+		long companyId, String event, Date from, Date to)
+		throws SystemException {
+
+		try {
+			if (from == null && to == null) {
+				BeaconIngestService.removeEventTable(companyId, event);
+				PingStore.delete(companyId, event);
+			}
+			else {
+				PingStore.purge(
+					companyId, event, from != null ? from.getTime() : Long.MIN_VALUE,
+					to != null ? to.getTime() : Long.MAX_VALUE);
+			}
+		}
+		catch (IOException e) {
+			throw new SystemException(e);
+		}
+		finally {
+			EventRollupRegistry.remove(companyId, event);
+			EventDateIndexCache.remove(companyId, event);
+			EventInvalidator.eventPurged(companyId, event);
+		}
+	}
+
+	private static void notify(
+		PurgeProgressListener listener, String event, long scanned, long total,
+		long purged) {
+
+		if (listener != null) {
+			listener.onProgress(event, scanned, total, purged);
+		}
+	}
+}
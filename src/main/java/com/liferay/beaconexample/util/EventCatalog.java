@@ -0,0 +1,77 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.liferay.portal.kernel.exception.SystemException;
+import com.liferay.portlet.expando.model.ExpandoTable;
+import com.liferay.portlet.expando.service.ExpandoTableLocalServiceUtil;
+
+/**
+ * The names of the events of each company, read from the company's beacon
+ * data Expando tables the first time they're asked for on this node. The
+ * events of a company are invalidated by the
+ * {@link com.liferay.beaconexample.BeaconTableListener} whenever one of its
+ * event tables is added or deleted on this node, and by the
+ * {@link EventInvalidator} when that happens on another node.
+ *
+ * @author James Falkner
+ */
+public class EventCatalog {
+
+	private static final ConcurrentMap<Long, List<String>> catalog =
+		new ConcurrentHashMap<Long, List<String>>();
+
+	/**
+	 * @param companyId The company ID under which the data can be found
+	 * @return The names of the company's events, unmodifiable
+	 * @throws SystemException if things go wrong
+	 */
+	public static List<String> getEvents(long companyId)
+		throws SystemException {
+
+		List<String> events = catalog.get(companyId);
+		if (events != null) {
+			return events;
+		}
+
+		// loaded under the lock, so an invalidation can't be overwritten by
+		// the events read before it
+		synchronized (catalog) {
+			events = catalog.get(companyId);
+			if (events != null) {
+				return events;
+			}
+
+			long start = System.nanoTime();
+			List<ExpandoTable> tables =
+				ExpandoTableLocalServiceUtil.getTables(
+					companyId, BeaconExpandoDataUtil.BEACON_DATA_CLASS);
+			BeaconMetrics.EXPANDO_QUERIES.increment();
+			BeaconMetrics.EXPANDO_QUERY_SECONDS.observeSince(start);
+
+			events = new ArrayList<String>(tables.size());
+			for (ExpandoTable table : tables) {
+				events.add(table.getName());
+			}
+			events = Collections.unmodifiableList(events);
+			catalog.put(companyId, events);
+			return events;
+		}
+	}
+
+	/**
+	 * Drop the events of a company, to be read again on next use
+	 * @param companyId The company ID under which the data can be found
+	 */
+	public static void invalidate(long companyId) {
+
+		synchronized (catalog) {
+			catalog.remove(companyId);
+		}
+	}
+}
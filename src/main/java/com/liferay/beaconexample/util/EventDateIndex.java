@@ -0,0 +1,331 @@
+package com.liferay.beaconexample.util;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * The classPKs of an event's rows, ordered by ping time, so that the rows of
+ * a time range can be found without loading the whole event. The index is
+ * built from the event's date column the first time a range of the event is
+ * read on this node, and from then on is updated by every ping written
+ * through this node.
+ * <p>
+ * Rows added in time order are appended. Rows added out of order are
+ * buffered, and merged into the index in one pass once the buffer holds an
+ * eighth of the index, or the index is read.
+ * 
+ * @author James Falkner
+ */
+public class EventDateIndex {
+
+	private static final int INSERTION_SORT_SIZE = 16;
+	private static final int MIN_PENDING_SIZE = 1024;
+
+	private long[] times = new long[16];
+	private long[] classPKs = new long[16];
+	private int size;
+
+	// rows added out of order, not merged yet
+	private long[] pendingTimes = new long[16];
+	private long[] pendingClassPKs = new long[16];
+	private int pendingSize;
+
+	private boolean complete;
+	private boolean failed;
+
+	/**
+	 * Add a row, unless it's already indexed
+	 * @param time The ping time of the row
+	 * @param classPK The classPK of the row
+	 */
+	public synchronized void add(long time, long classPK) {
+
+		int comparison =
+			size == 0 ? -1 : compare(times, classPKs, size - 1, time, classPK);
+		if (comparison == 0) {
+			return;
+		}
+
+		if (comparison < 0) {
+			times = ensureCapacity(times, size + 1);
+			classPKs = ensureCapacity(classPKs, size + 1);
+			times[size] = time;
+			classPKs[size] = classPK;
+			size++;
+			return;
+		}
+
+		pendingTimes = ensureCapacity(pendingTimes, pendingSize + 1);
+		pendingClassPKs = ensureCapacity(pendingClassPKs, pendingSize + 1);
+		pendingTimes[pendingSize] = time;
+		pendingClassPKs[pendingSize] = classPK;
+		pendingSize++;
+
+		if (pendingSize >= Math.max(MIN_PENDING_SIZE, size / 8)) {
+			merge();
+		}
+	}
+
+	/**
+	 * Add a batch of rows in any order, skipping rows that are already
+	 * indexed
+	 * @param times The ping times of the rows
+	 * @param classPKs The classPKs of the rows, in the same order
+	 */
+	public synchronized void addAll(long[] times, long[] classPKs) {
+
+		pendingTimes = ensureCapacity(pendingTimes, pendingSize + times.length);
+		pendingClassPKs =
+			ensureCapacity(pendingClassPKs, pendingSize + classPKs.length);
+		System.arraycopy(times, 0, pendingTimes, pendingSize, times.length);
+		System.arraycopy(
+			classPKs, 0, pendingClassPKs, pendingSize, classPKs.length);
+		pendingSize += times.length;
+
+		merge();
+	}
+
+	/**
+	 * @param fromTime The start of the range, inclusive
+	 * @param toTime The end of the range, exclusive
+	 * @return The classPKs of the rows in the range, in time order
+	 */
+	public synchronized long[] getClassPKs(long fromTime, long toTime) {
+
+		merge();
+
+		int from = indexOf(fromTime);
+		int to = Math.max(from, indexOf(toTime));
+
+		return Arrays.copyOfRange(classPKs, from, to);
+	}
+
+	/**
+	 * @param fromTime The start of the range, inclusive
+	 * @param toTime The end of the range, exclusive
+	 * @return The ping times of the rows in the range, followed by their
+	 *         classPKs, both in time order
+	 */
+	public synchronized long[][] getRows(long fromTime, long toTime) {
+
+		merge();
+
+		int from = indexOf(fromTime);
+		int to = Math.max(from, indexOf(toTime));
+
+		return new long[][] {
+			Arrays.copyOfRange(times, from, to),
+			Arrays.copyOfRange(classPKs, from, to)
+		};
+	}
+
+	/**
+	 * @return The number of indexed rows
+	 */
+	public synchronized int size() {
+
+		merge();
+
+		return size;
+	}
+
+	/**
+	 * Mark the index as built from the event's rows
+	 */
+	public synchronized void setComplete() {
+
+		complete = true;
+		notifyAll();
+	}
+
+	/**
+	 * Mark the build of the index as failed; the index must not be used
+	 */
+	public synchronized void setFailed() {
+
+		failed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Wait for the index to be built
+	 * @return true if it was built, false if the build failed and the index
+	 *         must not be used
+	 * @throws CancellationException if the thread is interrupted
+	 */
+	public synchronized boolean awaitComplete() {
+
+		while (!complete && !failed) {
+			try {
+				wait();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException(
+					"Interrupted waiting for a date index");
+			}
+		}
+		return complete;
+	}
+
+	/**
+	 * @return The index of the first row at or after a time
+	 */
+	private int indexOf(long time) {
+
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] < time) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Sort the buffered rows, and merge them with the indexed ones into new
+	 * arrays, dropping duplicates
+	 */
+	private void merge() {
+
+		if (pendingSize == 0) {
+			return;
+		}
+
+		sort(pendingTimes, pendingClassPKs, 0, pendingSize);
+
+		int capacity = Math.max(16, size + pendingSize);
+		long[] mergedTimes = new long[capacity];
+		long[] mergedClassPKs = new long[capacity];
+		int count = 0;
+
+		int i = 0;
+		int j = 0;
+		while (i < size || j < pendingSize) {
+			long time;
+			long classPK;
+			if (j == pendingSize ||
+				(i < size &&
+					compare(times, classPKs, i, pendingTimes[j],
+						pendingClassPKs[j]) <= 0)) {
+
+				time = times[i];
+				classPK = classPKs[i++];
+			}
+			else {
+				time = pendingTimes[j];
+				classPK = pendingClassPKs[j++];
+			}
+
+			if (count > 0 &&
+				compare(mergedTimes, mergedClassPKs, count - 1, time, classPK) == 0) {
+
+				continue;
+			}
+			mergedTimes[count] = time;
+			mergedClassPKs[count] = classPK;
+			count++;
+		}
+
+		times = mergedTimes;
+		classPKs = mergedClassPKs;
+		size = count;
+
+		pendingTimes = new long[16];
+		pendingClassPKs = new long[16];
+		pendingSize = 0;
+	}
+
+	/**
+	 * Sort the rows in a range of two arrays by time, then classPK, moving
+	 * the entries of both arrays together: a quicksort that leaves short
+	 * ranges to an insertion sort
+	 * @param times The ping times of the rows
+	 * @param classPKs The classPKs of the rows
+	 * @param from The first row to sort
+	 * @param to The row after the last one to sort
+	 */
+	private static void sort(long[] times, long[] classPKs, int from, int to) {
+
+		while (to - from > INSERTION_SORT_SIZE) {
+			int mid = (from + to) >>> 1;
+			long pivotTime = times[mid];
+			long pivotClassPK = classPKs[mid];
+
+			int i = from;
+			int j = to - 1;
+			while (i <= j) {
+				while (compare(times, classPKs, i, pivotTime, pivotClassPK) < 0) {
+					i++;
+				}
+				while (compare(times, classPKs, j, pivotTime, pivotClassPK) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					swap(times, classPKs, i++, j--);
+				}
+			}
+
+			// recurse into the smaller part only, so the stack stays shallow
+			if (j + 1 - from < to - i) {
+				sort(times, classPKs, from, j + 1);
+				from = i;
+			}
+			else {
+				sort(times, classPKs, i, to);
+				to = j + 1;
+			}
+		}
+
+		for (int i = from + 1; i < to; i++) {
+			for (int j = i;
+					j > from &&
+						compare(times, classPKs, j - 1, times[j], classPKs[j]) > 0;
+					j--) {
+
+				swap(times, classPKs, j - 1, j);
+			}
+		}
+	}
+
+	/**
+	 * Compare a row with a time and classPK, by time, then classPK
+	 */
+	private static int compare(
+		long[] times, long[] classPKs, int index, long time, long classPK) {
+
+		if (times[index] != time) {
+			return times[index] < time ? -1 : 1;
+		}
+		if (classPKs[index] != classPK) {
+			return classPKs[index] < classPK ? -1 : 1;
+		}
+		return 0;
+	}
+
+	private static void swap(
+		long[] times, long[] classPKs, int index1, int index2) {
+
+		long time = times[index1];
+		times[index1] = times[index2];
+		times[index2] = time;
+
+		long classPK = classPKs[index1];
+		classPKs[index1] = classPKs[index2];
+		classPKs[index2] = classPK;
+	}
+
+	private static long[] ensureCapacity(long[] array, int capacity) {
+
+		if (capacity <= array.length) {
+			return array;
+		}
+		return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+	}
+
+}
@@ -0,0 +1,99 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the {@link EventDateIndex} of the events whose rows have been most
+ * recently read by time range on this node, up to
+ * <code>beacons.date.index.max.events</code> of them; the least recently read
+ * index is dropped to make room for a new one. Entries must be removed
+ * whenever data is removed from an event; added rows are added to the index
+ * instead. Rows written or removed through other nodes drop the index,
+ * through the {@link EventInvalidator}.
+ * 
+ * @author James Falkner
+ */
+public class EventDateIndexCache {
+
+	// in access order, so the eldest entry is the least recently read
+	private static final Map<String, EventDateIndex> cache =
+		new LinkedHashMap<String, EventDateIndex>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(
+				Map.Entry<String, EventDateIndex> eldest) {
+
+				return size() > PortletPropsValues.BEACONS_DATE_INDEX_MAX_EVENTS;
+			}
+		};
+
+	/**
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @return The index of the event, or null if it hasn't been built yet
+	 */
+	public static EventDateIndex get(long companyId, String event) {
+
+		synchronized (cache) {
+			return cache.get(getKey(companyId, event));
+		}
+	}
+
+	/**
+	 * Register a new index, unless another thread registered one first
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @param index The index
+	 * @return The registered index
+	 */
+	public static EventDateIndex putIfAbsent(
+		long companyId, String event, EventDateIndex index) {
+
+		String key = getKey(companyId, event);
+		synchronized (cache) {
+			EventDateIndex existing = cache.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			cache.put(key, index);
+			return index;
+		}
+	}
+
+	/**
+	 * Invalidate the index of an event
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 */
+	public static void remove(long companyId, String event) {
+
+		synchronized (cache) {
+			cache.remove(getKey(companyId, event));
+		}
+	}
+
+	/**
+	 * Remove the index of an event, unless it has already been replaced by
+	 * another one
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @param index The index
+	 */
+	public static void remove(
+		long companyId, String event, EventDateIndex index) {
+
+		String key = getKey(companyId, event);
+		synchronized (cache) {
+			if (cache.get(key) == index) {
+				cache.remove(key);
+			}
+		}
+	}
+
+	private static String getKey(long companyId, String event) {
+
+		return companyId + "#" + event;
+	}
+}
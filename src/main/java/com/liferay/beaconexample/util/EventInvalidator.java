@@ -0,0 +1,230 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.liferay.portal.kernel.cluster.ClusterExecutorUtil;
+import com.liferay.portal.kernel.cluster.ClusterRequest;
+import com.liferay.portal.kernel.exception.SystemException;
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.messaging.BaseMessageListener;
+import com.liferay.portal.kernel.messaging.Message;
+import com.liferay.portal.kernel.messaging.MessageBusUtil;
+import com.liferay.portal.kernel.messaging.MessageListener;
+import com.liferay.portal.kernel.messaging.SynchronousDestination;
+import com.liferay.portal.kernel.util.MethodHandler;
+import com.liferay.portal.kernel.util.MethodKey;
+
+/**
+ * Tells the other nodes of a cluster that the data of an event, or the
+ * events of a company, changed on this node, so they drop what they derived
+ * from it: the rollups, date indexes, columnar stores, event catalog and
+ * resolved event tables are all kept per node, and are only updated by
+ * changes made through their own node.
+ * <p>
+ * Writes are noticed at most once per event every
+ * <code>beacons.cluster.notice.seconds</code>, however many batches are
+ * written meanwhile, and only mark the other nodes' rollups stale: they're
+ * read until a new scan has replaced them. Purges are noticed at once, and
+ * drop the rollups.
+ * <p>
+ * The notice is multicast with the portal's {@link ClusterExecutorUtil}, as
+ * a call to {@link MessageBusUtil#sendMessage(String, Object)}, so the other
+ * nodes only need the portal's classes to receive it; it's then delivered to
+ * this plugin through a message bus destination. Nothing is sent unless
+ * cluster link is enabled.
+ *
+ * @author James Falkner
+ */
+public class EventInvalidator {
+
+	public static final String DESTINATION_NAME = "liferay/beacons_invalidation";
+
+	private static final String CATALOG = "catalog";
+	private static final String EVENT = "event";
+	private static final String WRITE = "write";
+
+	// the events with a write notice waiting to be sent
+	private static final ConcurrentMap<String, Boolean> pendingWrites =
+		new ConcurrentHashMap<String, Boolean>();
+
+	private static ScheduledExecutorService scheduler;
+
+	private static final MethodKey sendMessageMethodKey = new MethodKey(
+		MessageBusUtil.class, "sendMessage", String.class, Object.class);
+
+	private static final MessageListener messageListener =
+		new BaseMessageListener() {
+
+			@Override
+			protected void doReceive(Message message) {
+
+				String[] notice = (String[]) message.getPayload();
+				long companyId = Long.parseLong(notice[1]);
+
+				if (CATALOG.equals(notice[0])) {
+					EventCatalog.invalidate(companyId);
+					BeaconIngestService.removeEventTable(companyId, notice[2]);
+				}
+				else if (EVENT.equals(notice[0])) {
+					invalidateEvent(companyId, notice[2]);
+				}
+				else if (WRITE.equals(notice[0])) {
+					staleEvent(companyId, notice[2]);
+				}
+			}
+		};
+
+	/**
+	 * Start receiving the notices of the other nodes, and sending the write
+	 * notices of this one
+	 */
+	public static synchronized void register() {
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+
+					Thread thread =
+						new Thread(runnable, "Beacon invalidation notices");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+		SynchronousDestination destination = new SynchronousDestination();
+		destination.setName(DESTINATION_NAME);
+		destination.open();
+
+		MessageBusUtil.addDestination(destination);
+		MessageBusUtil.registerMessageListener(DESTINATION_NAME, messageListener);
+	}
+
+	/**
+	 * Stop receiving notices; the write notices waiting to be sent are still
+	 * sent
+	 */
+	public static synchronized void unregister() {
+
+		scheduler.shutdown();
+		scheduler = null;
+
+		MessageBusUtil.unregisterMessageListener(
+			DESTINATION_NAME, messageListener);
+		MessageBusUtil.removeDestination(DESTINATION_NAME);
+	}
+
+	/**
+	 * Pings of an event have been written on this node. The notice is sent
+	 * once the notice interval has passed, along with those of any other
+	 * writes to the event meanwhile.
+	 * @param companyId The company ID under which the data is stored
+	 * @param event The event name
+	 */
+	public static synchronized void eventWritten(
+		final long companyId, final String event) {
+
+		if (!ClusterExecutorUtil.isEnabled()) {
+			return;
+		}
+
+		final String key = companyId + "#" + event;
+		if (pendingWrites.putIfAbsent(key, Boolean.TRUE) != null) {
+			return;
+		}
+
+		Runnable send = new Runnable() {
+
+			@Override
+			public void run() {
+
+				pendingWrites.remove(key);
+				notifyCluster(
+					new String[] {WRITE, String.valueOf(companyId), event});
+			}
+		};
+
+		if (scheduler == null) {
+			send.run();
+		}
+		else {
+			scheduler.schedule(
+				send, PortletPropsValues.BEACONS_CLUSTER_NOTICE_SECONDS,
+				TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Pings of an event have been deleted on this node
+	 * @param companyId The company ID under which the data is stored
+	 * @param event The event name
+	 */
+	public static void eventPurged(long companyId, String event) {
+
+		notifyCluster(new String[] {EVENT, String.valueOf(companyId), event});
+	}
+
+	/**
+	 * An event table of a company has been added or deleted on this node
+	 * @param companyId The company ID under which the data is stored
+	 * @param event The event name
+	 */
+	public static void catalogChanged(long companyId, String event) {
+
+		notifyCluster(new String[] {CATALOG, String.valueOf(companyId), event});
+	}
+
+	/**
+	 * Drop everything this node derived from the rows of an event. The
+	 * columnar store is deleted, as it can't get the rows written through
+	 * other nodes; the event is read from its table from then on.
+	 */
+	private static void invalidateEvent(long companyId, String event) {
+
+		EventRollupRegistry.remove(companyId, event);
+		EventDateIndexCache.remove(companyId, event);
+		PingStore.delete(companyId, event);
+	}
+
+	/**
+	 * Mark the rollup of an event stale, after pings have been written
+	 * through another node, and drop the date index and columnar store, which
+	 * can't get the new rows
+	 */
+	private static void staleEvent(long companyId, String event) {
+
+		EventRollupRegistry.markStale(companyId, event);
+		EventDateIndexCache.remove(companyId, event);
+		PingStore.delete(companyId, event);
+	}
+
+	private static void notifyCluster(String[] notice) {
+
+		if (!ClusterExecutorUtil.isEnabled()) {
+			return;
+		}
+
+		ClusterRequest clusterRequest = ClusterRequest.createMulticastRequest(
+			new MethodHandler(sendMessageMethodKey, DESTINATION_NAME, notice),
+			true);
+		clusterRequest.setFireAndForget(true);
+
+		try {
+			ClusterExecutorUtil.execute(clusterRequest);
+		}
+		catch (SystemException e) {
+			_log.error("Unable to notify the cluster of a change of beacon data", e);
+		}
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(EventInvalidator.class);
+
+}
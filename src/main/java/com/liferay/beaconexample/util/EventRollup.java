@@ -0,0 +1,367 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import com.liferay.portal.kernel.util.Time;
+import com.liferay.portal.kernel.util.Validator;
+
+/**
+ * The precomputed per-bucket counts of an event, kept up to date as pings are
+ * written so chart data can be built without rescanning the raw rows. All
+ * access to the underlying {@link PingAggregator} must synchronize on the
+ * rollup, once it's complete.
+ * <p>
+ * The initial scan feeds the aggregator without holding the rollup's lock,
+ * so writers aren't held up by it: pings written meanwhile are queued, and
+ * counted when the scan completes. Buckets older than
+ * <code>beacons.rollup.late.minutes</code> before the latest ping are
+ * sealed, so only the recent buckets keep the pings they counted: as a scan
+ * that reads the pings in time order advances, and once the scan is
+ * complete.
+ * <p>
+ * A rollup is marked stale when pings of its event are written through
+ * another node. It's still read until a replacement, built by a new scan,
+ * takes its place; pings written through this node meanwhile are counted
+ * by both.
+ * 
+ * @author James Falkner
+ */
+public class EventRollup {
+
+	private final PingAggregator aggregator;
+	private long firstTime;
+	private long lastTime;
+	private int rowCount;
+	private long version;
+	private boolean complete;
+	private boolean failed;
+
+	// the scanned time at which the initial scan seals again
+	private long nextSealTime = Long.MIN_VALUE;
+
+	private boolean stale;
+
+	// the rollup being built to replace this stale one
+	private EventRollup replacement;
+
+	// pings written during the initial scan
+	private List<Ping> pendingPings = new ArrayList<Ping>();
+
+	public EventRollup(BeaconEventMetadata metadata) {
+
+		aggregator =
+			new PingAggregator(metadata, PortletPropsValues.BEACONS_RESOLUTIONS);
+		firstTime = metadata.getFirstTime();
+		lastTime = metadata.getLastTime();
+		rowCount = metadata.getRowCount();
+	}
+
+	/**
+	 * Count a batch of newly written pings in the affected region and
+	 * beacon/proximity buckets
+	 * 
+	 * @param pings The pings
+	 * @return false if a ping is older than the first bucket of the rollup, or
+	 *         falls in a sealed bucket, in which case the rollup has to be
+	 *         rebuilt
+	 */
+	public synchronized boolean addPings(List<Ping> pings) {
+
+		if (failed) {
+			return false;
+		}
+		if (!complete) {
+			pendingPings.addAll(pings);
+			return true;
+		}
+
+		version++;
+		for (Ping ping : pings) {
+			if (!addPing(ping)) {
+				return false;
+			}
+		}
+		seal();
+		return true;
+	}
+
+	private boolean addPing(Ping ping) {
+
+		long time = ping.getTime();
+		if (!aggregator.beginPing(time, ping.getId())) {
+			return false;
+		}
+
+		for (String region : ping.getRegions()) {
+			String reg = region.trim();
+			if (Validator.isNotNull(reg)) {
+				aggregator.addRegion(reg);
+			}
+		}
+		List<String> beaconNames = ping.getBeaconNames();
+		List<String> beaconProximities = ping.getBeaconProximities();
+		for (int i = 0; i < beaconNames.size(); i++) {
+			aggregator.addBeacon(beaconNames.get(i), beaconProximities.get(i));
+		}
+
+		if (time < firstTime) {
+			firstTime = time;
+		}
+		if (time > lastTime) {
+			lastTime = time;
+		}
+		rowCount++;
+		return true;
+	}
+
+	/**
+	 * Collect the counts of every series that has pings at or after a given
+	 * time, for sending to open charts. There is an update per resolution.
+	 * 
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @param fromTime The time of the earliest changed ping
+	 * @return The updates
+	 */
+	public synchronized List<BeaconEventUpdate> getUpdates(
+		long companyId, String event, long fromTime) {
+
+		List<BeaconEventUpdate> updates = new ArrayList<BeaconEventUpdate>();
+		for (long resolution : aggregator.getResolutions()) {
+			updates.add(getUpdate(companyId, event, resolution, fromTime));
+		}
+		return updates;
+	}
+
+	private BeaconEventUpdate getUpdate(
+		long companyId, String event, long resolution, long fromTime) {
+
+		long firstBucketTime = aggregator.getFirstBucketTime(resolution);
+		int fromIndex =
+			(int) Math.max(0, (fromTime - firstBucketTime) / resolution);
+		int bucketCount = aggregator.getBucketCount(resolution);
+
+		Map<String, int[]> regionCounts = new HashMap<String, int[]>();
+		String[] regions = aggregator.getRegions().getNames();
+		for (int region = 0; region < regions.length; region++) {
+			int[] counts = getCounts(
+				aggregator.getRegionCounter(resolution, region), fromIndex,
+				bucketCount);
+			if (counts != null) {
+				regionCounts.put(regions[region], counts);
+			}
+		}
+
+		Map<String, Map<String, int[]>> beaconCounts =
+			new HashMap<String, Map<String, int[]>>();
+		String[] beacons = aggregator.getBeacons().getNames();
+		String[] proximities = aggregator.getProximities().getNames();
+		for (int beacon = 0; beacon < beacons.length; beacon++) {
+			Map<String, int[]> proxCounts = new HashMap<String, int[]>();
+			for (int proximity = 0; proximity < proximities.length; proximity++) {
+				int[] counts = getCounts(
+					aggregator.getBeaconCounter(resolution, beacon, proximity),
+					fromIndex, bucketCount);
+				if (counts != null) {
+					proxCounts.put(proximities[proximity], counts);
+				}
+			}
+			if (!proxCounts.isEmpty()) {
+				beaconCounts.put(beacons[beacon], proxCounts);
+			}
+		}
+
+		return new BeaconEventUpdate(
+			companyId, event, firstBucketTime, resolution, fromIndex,
+			regionCounts, beaconCounts);
+	}
+
+	/**
+	 * @return The counts of a counter in a range of buckets, or null if they're
+	 *         all zero and so can't have changed
+	 */
+	private static int[] getCounts(
+		PingBucketCounter counter, int fromIndex, int bucketCount) {
+
+		if (counter == null) {
+			return null;
+		}
+		int[] counts = counter.getCounts(fromIndex, bucketCount);
+		for (int count : counts) {
+			if (count > 0) {
+				return counts;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The aggregator holding the counts; synchronize on this rollup
+	 *         while using it
+	 */
+	public PingAggregator getAggregator() {
+
+		return aggregator;
+	}
+
+	/**
+	 * Mark the rollup as holding every ping of the event, once its initial
+	 * scan is done, counting the pings written during the scan
+	 * @return false if a ping written during the scan is older than the first
+	 *         bucket, in which case the rollup has failed
+	 */
+	public synchronized boolean setComplete() {
+
+		version++;
+		for (Ping ping : pendingPings) {
+			if (!addPing(ping)) {
+				setFailed();
+				return false;
+			}
+		}
+		pendingPings = null;
+		complete = true;
+		seal();
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Mark the initial scan as failed or cancelled; the rollup must not be
+	 * used
+	 */
+	public synchronized void setFailed() {
+
+		failed = true;
+		pendingPings = null;
+		notifyAll();
+	}
+
+	/**
+	 * @return false while the initial scan is running, or if it failed
+	 */
+	public synchronized boolean isComplete() {
+
+		return complete;
+	}
+
+	/**
+	 * Wait for the initial scan to finish
+	 * @return true if it completed, false if it failed and the rollup must
+	 *         not be used
+	 * @throws CancellationException if the thread is interrupted
+	 */
+	public synchronized boolean awaitComplete() {
+
+		while (!complete && !failed) {
+			try {
+				wait();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException("Interrupted waiting for a scan");
+			}
+		}
+		return complete;
+	}
+
+	/**
+	 * Seal the buckets an initial scan that reads the pings in time order has
+	 * left behind, so the pings they counted aren't kept until the scan
+	 * completes. Sealing renumbers the pings of the recent buckets, so it's
+	 * only done once per late window scanned. Only called by the scanning
+	 * thread.
+	 * 
+	 * @param time The time of the last scanned ping
+	 */
+	public void scanned(long time) {
+
+		if (time < nextSealTime) {
+			return;
+		}
+
+		long lateWindow =
+			PortletPropsValues.BEACONS_ROLLUP_LATE_MINUTES * Time.MINUTE;
+		aggregator.seal(time - lateWindow);
+		nextSealTime = time + Math.max(lateWindow, Time.MINUTE);
+	}
+
+	/**
+	 * Seal the buckets that are too old to receive late pings
+	 */
+	private void seal() {
+
+		aggregator.seal(
+			lastTime - PortletPropsValues.BEACONS_ROLLUP_LATE_MINUTES * Time.MINUTE);
+	}
+
+	/**
+	 * Mark the rollup, and the replacement being built for it, as missing
+	 * pings written through another node
+	 */
+	public synchronized void markStale() {
+
+		stale = true;
+		if (replacement != null) {
+			replacement.markStale();
+		}
+	}
+
+	/**
+	 * @return true if pings have been written through another node since the
+	 *         rollup's scan started
+	 */
+	public synchronized boolean isStale() {
+
+		return stale;
+	}
+
+	/**
+	 * Start replacing this stale rollup, unless a replacement is already
+	 * being built
+	 * @param replacement The new rollup, not scanned yet
+	 * @return false if another replacement is being built
+	 */
+	public synchronized boolean setReplacement(EventRollup replacement) {
+
+		if (this.replacement != null) {
+			return false;
+		}
+		this.replacement = replacement;
+		return true;
+	}
+
+	/**
+	 * Forget a replacement whose scan failed, so another can be built
+	 */
+	public synchronized void removeReplacement() {
+
+		replacement = null;
+	}
+
+	/**
+	 * @return The rollup being built to replace this stale one, or null
+	 */
+	public synchronized EventRollup getReplacement() {
+
+		return replacement;
+	}
+
+	/**
+	 * @return A number that changes whenever pings are added to the rollup
+	 */
+	public synchronized long getVersion() {
+
+		return version;
+	}
+
+	public synchronized BeaconEventMetadata getMetadata() {
+
+		return new BeaconEventMetadata(firstTime, lastTime, rowCount);
+	}
+}
@@ -0,0 +1,210 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the {@link EventRollup} of the events most recently read on this
+ * node, up to <code>beacons.rollup.max.events</code> of them; the least
+ * recently read rollup is dropped to make room for a new one, and is built
+ * again by a full scan if its event is read again. Rollups are built by a
+ * full scan the first time an event is read, and from then on are updated in
+ * place by every ping written through this node. Pings written through other
+ * nodes mark the rollup stale, and pings purged through them drop it, through
+ * the {@link EventInvalidator}.
+ *
+ * @author James Falkner
+ */
+public class EventRollupRegistry {
+
+	// in access order, so the eldest entry is the least recently read
+	private static final Map<String, EventRollup> rollups =
+		new LinkedHashMap<String, EventRollup>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(
+				Map.Entry<String, EventRollup> eldest) {
+
+				if (size() <= PortletPropsValues.BEACONS_ROLLUP_MAX_EVENTS) {
+					return false;
+				}
+				BeaconEventDataCache.remove(eldest.getValue());
+				return true;
+			}
+		};
+
+	/**
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @return The rollup of the event, or null if it hasn't been built yet
+	 */
+	public static EventRollup get(long companyId, String event) {
+
+		synchronized (rollups) {
+			return rollups.get(getKey(companyId, event));
+		}
+	}
+
+	/**
+	 * Register a newly built rollup, unless another thread registered one first
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @param rollup The rollup
+	 * @return The registered rollup
+	 */
+	public static EventRollup putIfAbsent(
+		long companyId, String event, EventRollup rollup) {
+
+		String key = getKey(companyId, event);
+		synchronized (rollups) {
+			EventRollup existing = rollups.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			rollups.put(key, rollup);
+			return rollup;
+		}
+	}
+
+	/**
+	 * Update the rollup of an event with a batch of newly written pings, and
+	 * send the changed points to any open charts of the event. If the
+	 * event's rollup hasn't been built yet, nothing needs to be done: it will
+	 * include the pings when it's built.
+	 *
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @param pings The pings
+	 */
+	public static void addPings(long companyId, String event, List<Ping> pings) {
+
+		if (pings.isEmpty()) {
+			return;
+		}
+
+		EventRollup rollup = get(companyId, event);
+		if (rollup == null) {
+			BeaconEventMetadataCache.remove(companyId, event);
+			return;
+		}
+
+		EventRollup replacement = rollup.getReplacement();
+		if (replacement != null && !replacement.addPings(pings)) {
+			rollup.removeReplacement();
+		}
+
+		if (!rollup.addPings(pings)) {
+
+			// older than the buckets the rollup can count, rebuild it on the
+			// next read
+			remove(companyId, event, rollup);
+		}
+		else if (!rollup.isComplete()) {
+
+			// queued until the initial scan completes
+			BeaconEventMetadataCache.remove(companyId, event);
+		}
+		else {
+			if (rollup.isStale()) {
+
+				// missing the pings written through other nodes
+				BeaconEventMetadataCache.remove(companyId, event);
+			}
+			else {
+				BeaconEventMetadataCache.put(
+					companyId, event, rollup.getMetadata());
+			}
+
+			if (BeaconEventBroadcaster.hasListeners(companyId, event)) {
+				for (BeaconEventUpdate update : rollup.getUpdates(
+						companyId, event, getFirstTime(pings))) {
+
+					BeaconEventBroadcaster.broadcast(update);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mark the rollup of an event stale, after pings of the event have been
+	 * written through another node. It's replaced once it's read again.
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 */
+	public static void markStale(long companyId, String event) {
+
+		EventRollup rollup = get(companyId, event);
+		if (rollup != null) {
+			rollup.markStale();
+		}
+		BeaconEventMetadataCache.remove(companyId, event);
+	}
+
+	/**
+	 * Put the complete replacement of a stale rollup in its place, unless the
+	 * stale rollup has been dropped meanwhile
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @param rollup The stale rollup
+	 * @param replacement The replacement
+	 */
+	public static void replace(
+		long companyId, String event, EventRollup rollup,
+		EventRollup replacement) {
+
+		String key = getKey(companyId, event);
+		synchronized (rollups) {
+			if (rollups.get(key) != rollup) {
+				return;
+			}
+			rollups.put(key, replacement);
+		}
+		BeaconEventMetadataCache.remove(companyId, event);
+		BeaconEventDataCache.remove(rollup);
+	}
+
+	public static void remove(long companyId, String event) {
+
+		synchronized (rollups) {
+			rollups.remove(getKey(companyId, event));
+		}
+		BeaconEventMetadataCache.remove(companyId, event);
+		BeaconEventDataCache.remove(companyId, event);
+	}
+
+	/**
+	 * Remove the rollup of an event, unless it has already been replaced by
+	 * another one
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @param rollup The rollup
+	 */
+	public static void remove(long companyId, String event, EventRollup rollup) {
+
+		String key = getKey(companyId, event);
+		synchronized (rollups) {
+			if (rollups.get(key) != rollup) {
+				return;
+			}
+			rollups.remove(key);
+		}
+		BeaconEventMetadataCache.remove(companyId, event);
+		BeaconEventDataCache.remove(companyId, event);
+	}
+
+	private static long getFirstTime(List<Ping> pings) {
+
+		long firstTime = Long.MAX_VALUE;
+		for (Ping ping : pings) {
+			firstTime = Math.min(firstTime, ping.getTime());
+		}
+		return firstTime;
+	}
+
+	private static String getKey(long companyId, String event) {
+
+		return companyId + "#" + event;
+	}
+}
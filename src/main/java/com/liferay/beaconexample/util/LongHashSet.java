@@ -0,0 +1,132 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.Serializable;
+
+/**
+ * A minimal open-addressing set of primitive longs. It avoids boxing every
+ * key into a Long and allocating an entry object per element, which is what
+ * dominates the heap when distinct pings are tracked with a HashSet.
+ * 
+ * @author James Falkner
+ */
+@SuppressWarnings("serial")
+public class LongHashSet implements Serializable {
+
+	private static final long EMPTY = 0L;
+
+	private long[] keys;
+	private boolean containsEmpty;
+	private int size;
+	private int resizeAt;
+
+	public LongHashSet() {
+
+		this(16);
+	}
+
+	public LongHashSet(int expectedSize) {
+
+		int capacity = 16;
+		while (capacity * 3 / 4 < expectedSize) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		resizeAt = capacity * 3 / 4;
+	}
+
+	/**
+	 * Add a key to the set
+	 * @param key the key
+	 * @return true if the key was not already present
+	 */
+	public boolean add(long key) {
+
+		if (key == EMPTY) {
+			if (containsEmpty) {
+				return false;
+			}
+			containsEmpty = true;
+			size++;
+			return true;
+		}
+
+		int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		if (++size > resizeAt) {
+			rehash(keys.length << 1);
+		}
+		return true;
+	}
+
+	public boolean contains(long key) {
+
+		if (key == EMPTY) {
+			return containsEmpty;
+		}
+
+		int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+		while (keys[slot] != EMPTY) {
+			if (keys[slot] == key) {
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size() {
+
+		return size;
+	}
+
+	/**
+	 * @return the keys of the set, in no particular order
+	 */
+	public long[] toArray() {
+
+		long[] array = new long[size];
+		int i = 0;
+		if (containsEmpty) {
+			array[i++] = EMPTY;
+		}
+		for (long key : keys) {
+			if (key != EMPTY) {
+				array[i++] = key;
+			}
+		}
+		return array;
+	}
+
+	private void rehash(int capacity) {
+
+		long[] oldKeys = keys;
+		keys = new long[capacity];
+		resizeAt = capacity * 3 / 4;
+		int mask = capacity - 1;
+		for (long key : oldKeys) {
+			if (key == EMPTY) {
+				continue;
+			}
+			int slot = mix(key) & mask;
+			while (keys[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+		}
+	}
+
+	private static int mix(long key) {
+
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,60 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A metric of {@link BeaconMetrics}, named and described the way Prometheus
+ * expects
+ * 
+ * @author James Falkner
+ */
+public abstract class Metric {
+
+	private final String name;
+	private final String help;
+
+	protected Metric(String name, String help) {
+
+		this.name = name;
+		this.help = help;
+	}
+
+	public String getName() {
+
+		return name;
+	}
+
+	public String getHelp() {
+
+		return help;
+	}
+
+	/**
+	 * @return The Prometheus type of the metric
+	 */
+	protected abstract String getType();
+
+	/**
+	 * Write the samples of the metric, in the Prometheus text format
+	 * @param writer Where to write them
+	 * @throws IOException if the writer fails
+	 */
+	protected abstract void writeSamples(Writer writer)
+		throws IOException;
+
+	/**
+	 * Write the metric with its HELP and TYPE lines, in the Prometheus text
+	 * format
+	 * @param writer Where to write it
+	 * @throws IOException if the writer fails
+	 */
+	public void writePrometheus(Writer writer)
+		throws IOException {
+
+		writer.write("# HELP " + name + " " + help + "\n");
+		writer.write("# TYPE " + name + " " + getType() + "\n");
+		writeSamples(writer);
+	}
+}
@@ -0,0 +1,50 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count that only goes up
+ * 
+ * @author James Falkner
+ */
+public class MetricCounter extends Metric implements MetricCounterMBean {
+
+	private final AtomicLong count = new AtomicLong();
+
+	public MetricCounter(String name, String help) {
+
+		super(name, help);
+	}
+
+	public void increment() {
+
+		count.incrementAndGet();
+	}
+
+	public void add(long delta) {
+
+		count.addAndGet(delta);
+	}
+
+	@Override
+	public long getCount() {
+
+		return count.get();
+	}
+
+	@Override
+	protected String getType() {
+
+		return "counter";
+	}
+
+	@Override
+	protected void writeSamples(Writer writer)
+		throws IOException {
+
+		writer.write(getName() + " " + count.get() + "\n");
+	}
+}
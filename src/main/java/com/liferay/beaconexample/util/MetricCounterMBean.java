@@ -0,0 +1,16 @@
+
+package com.liferay.beaconexample.util;
+
+/**
+ * The JMX view of a {@link MetricCounter}
+ * 
+ * @author James Falkner
+ */
+public interface MetricCounterMBean {
+
+	public String getName();
+
+	public String getHelp();
+
+	public long getCount();
+}
@@ -0,0 +1,129 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The distribution of observed values over fixed buckets, plus their count,
+ * sum and maximum. Timers are histograms of seconds.
+ * <p>
+ * Observations are made once per call of an instrumented method, not per row
+ * or ping, so they're simply synchronized.
+ * 
+ * @author James Falkner
+ */
+public class MetricHistogram extends Metric implements MetricHistogramMBean {
+
+	/**
+	 * Bucket bounds for timers, from a millisecond to a minute
+	 */
+	public static final double[] SECONDS_BOUNDS = new double[] {
+		0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+	};
+
+	/**
+	 * Bucket bounds for sizes, from a kilobyte to four megabytes
+	 */
+	public static final double[] BYTES_BOUNDS = new double[] {
+		1024, 4096, 16384, 65536, 262144, 1048576, 4194304
+	};
+
+	private final double[] bounds;
+
+	// [bucket], the last one past the largest bound
+	private final long[] bucketCounts;
+	private long count;
+	private double sum;
+	private double max;
+
+	/**
+	 * @param name The name of the metric
+	 * @param help The description of the metric
+	 * @param bounds The upper bounds of the buckets, ascending
+	 */
+	public MetricHistogram(String name, String help, double[] bounds) {
+
+		super(name, help);
+
+		this.bounds = bounds.clone();
+		bucketCounts = new long[bounds.length + 1];
+	}
+
+	public synchronized void observe(double value) {
+
+		int bucket = 0;
+		while (bucket < bounds.length && value > bounds[bucket]) {
+			bucket++;
+		}
+		bucketCounts[bucket]++;
+		count++;
+		sum += value;
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Observe the seconds elapsed since a start time
+	 * @param startNanos The start time, from {@link System#nanoTime()}
+	 */
+	public void observeSince(long startNanos) {
+
+		observe((System.nanoTime() - startNanos) / 1e9);
+	}
+
+	@Override
+	public synchronized long getCount() {
+
+		return count;
+	}
+
+	@Override
+	public synchronized double getSum() {
+
+		return sum;
+	}
+
+	@Override
+	public synchronized double getMean() {
+
+		return count > 0 ? sum / count : 0;
+	}
+
+	@Override
+	public synchronized double getMax() {
+
+		return max;
+	}
+
+	@Override
+	protected String getType() {
+
+		return "histogram";
+	}
+
+	@Override
+	protected void writeSamples(Writer writer)
+		throws IOException {
+
+		long[] counts;
+		long count;
+		double sum;
+		synchronized (this) {
+			counts = bucketCounts.clone();
+			count = this.count;
+			sum = this.sum;
+		}
+
+		// Prometheus buckets are cumulative
+		long cumulative = 0;
+		for (int i = 0; i < bounds.length; i++) {
+			cumulative += counts[i];
+			writer.write(
+				getName() + "_bucket{le=\"" + bounds[i] + "\"} " + cumulative +
+					"\n");
+		}
+		writer.write(getName() + "_bucket{le=\"+Inf\"} " + count + "\n");
+		writer.write(getName() + "_sum " + sum + "\n");
+		writer.write(getName() + "_count " + count + "\n");
+	}
+}
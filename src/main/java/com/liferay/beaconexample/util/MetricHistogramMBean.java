@@ -0,0 +1,22 @@
+
+package com.liferay.beaconexample.util;
+
+/**
+ * The JMX view of a {@link MetricHistogram}
+ * 
+ * @author James Falkner
+ */
+public interface MetricHistogramMBean {
+
+	public String getName();
+
+	public String getHelp();
+
+	public long getCount();
+
+	public double getSum();
+
+	public double getMean();
+
+	public double getMax();
+}
@@ -0,0 +1,140 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single beacon ping as reported by a gateway: when and by whom it was
+ * seen, the regions it was seen in and the beacons (with their proximity)
+ * that saw it.
+ * 
+ * @author James Falkner
+ */
+@SuppressWarnings("serial")
+public class Ping implements Serializable {
+
+	private final long time;
+	private final String id;
+	private final List<String> regions = new ArrayList<String>();
+	private final List<String> beaconNames = new ArrayList<String>();
+	private final List<String> beaconProximities = new ArrayList<String>();
+
+	public Ping(long time, String id) {
+
+		this.time = time;
+		this.id = id;
+	}
+
+	public void addRegion(String region) {
+
+		regions.add(region);
+	}
+
+	public void addBeacon(String beaconName, String proximity) {
+
+		beaconNames.add(beaconName);
+		beaconProximities.add(proximity);
+	}
+
+	public long getTime() {
+
+		return time;
+	}
+
+	public String getId() {
+
+		return id;
+	}
+
+	public List<String> getRegions() {
+
+		return regions;
+	}
+
+	public List<String> getBeaconNames() {
+
+		return beaconNames;
+	}
+
+	/**
+	 * @return The proximity of each of the {@link #getBeaconNames()}
+	 */
+	public List<String> getBeaconProximities() {
+
+		return beaconProximities;
+	}
+
+	/**
+	 * @return The regions, as stored in the regions Expando column
+	 */
+	public String getRegionsJSON() {
+
+		StringBuilder sb = new StringBuilder(regions.size() * 16 + 2);
+		sb.append('[');
+		for (int i = 0; i < regions.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			appendJSONString(sb, regions.get(i));
+		}
+		sb.append(']');
+		return sb.toString();
+	}
+
+	/**
+	 * @return The beacons and proximities, as stored in the beacons Expando
+	 *         column
+	 */
+	public String getBeaconsJSON() {
+
+		StringBuilder sb = new StringBuilder(beaconNames.size() * 48 + 2);
+		sb.append('[');
+		for (int i = 0; i < beaconNames.size(); i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"beacon_name\":");
+			appendJSONString(sb, beaconNames.get(i));
+			sb.append(",\"proximity\":");
+			appendJSONString(sb, beaconProximities.get(i));
+			sb.append('}');
+		}
+		sb.append(']');
+		return sb.toString();
+	}
+
+	private static void appendJSONString(StringBuilder sb, String value) {
+
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					sb.append("\\\"");
+					break;
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						sb.append(String.format("\\u%04x", (int) c));
+					}
+					else {
+						sb.append(c);
+					}
+			}
+		}
+		sb.append('"');
+	}
+}
@@ -0,0 +1,376 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.Arrays;
+
+/**
+ * Aggregates pings into per-region and per-beacon/proximity bucket counters,
+ * at several resolutions (bucket widths) at once. Pings are fed one at a
+ * time: {@link #beginPing(long, String)} followed by any number of
+ * {@link #addRegion(int)} and {@link #addBeacon(int, int)} calls for that
+ * ping.
+ * <p>
+ * The counts are of distinct ping IDs per bucket, which don't add up across
+ * buckets: a ping ID seen in two five minute buckets is one ping in their
+ * hour. So every resolution keeps its own counters, fed from the same pass
+ * over the pings.
+ * <p>
+ * Region, beacon and proximity names are encoded as symbols of the
+ * aggregator's own {@link SymbolDictionary}s, and the counters are arrays
+ * indexed by symbol. Names are only needed again when the counts are turned
+ * into chart data.
+ * <p>
+ * Buckets are aligned to multiples of the bucket width, starting with the
+ * bucket holding the first ping of the event. Counting is idempotent: feeding
+ * the same ping twice doesn't change the counts. Once the older buckets can't
+ * receive pings any more, {@link #seal(long)} forgets which pings they
+ * counted.
+ * 
+ * @author James Falkner
+ */
+public class PingAggregator {
+
+	private final Level[] levels;
+
+	// pings before this time would fall before the first bucket of a level
+	private final long firstTime;
+
+	private final SymbolDictionary regions = new SymbolDictionary();
+	private final SymbolDictionary beacons = new SymbolDictionary();
+	private final SymbolDictionary proximities = new SymbolDictionary();
+
+	// ping IDs are only needed for distinctness, so keep a small int instead
+	private SymbolDictionary pingIds = new SymbolDictionary();
+
+	// pings before this time fall in buckets whose pings have been forgotten
+	private long sealedTime = Long.MIN_VALUE;
+
+	private int currentOrdinal;
+
+	/**
+	 * @param metadata The first and last ping times of the event
+	 * @param resolutions The bucket widths to aggregate at, in milliseconds
+	 */
+	public PingAggregator(BeaconEventMetadata metadata, long[] resolutions) {
+
+		resolutions = resolutions.clone();
+		Arrays.sort(resolutions);
+
+		levels = new Level[resolutions.length];
+		long firstTime = Long.MIN_VALUE;
+		for (int i = 0; i < resolutions.length; i++) {
+			levels[i] = new Level(resolutions[i], metadata);
+			firstTime = Math.max(firstTime, levels[i].getFirstBucketTime());
+		}
+		this.firstTime = firstTime;
+	}
+
+	/**
+	 * Start a new ping; subsequent regions and beacons are attributed to it
+	 * @param time the time of the ping
+	 * @param pingId the ID of the ping
+	 * @return false if the ping is older than the first bucket, or falls in a
+	 *         sealed bucket, in which case it isn't counted
+	 */
+	public boolean beginPing(long time, String pingId) {
+
+		if (!beginPing(time)) {
+			return false;
+		}
+		currentOrdinal = pingIds.intern(pingId);
+		return true;
+	}
+
+	/**
+	 * Start a new ping whose ID is a symbol of {@link #getPingIds()}
+	 * @see #beginPing(long, String)
+	 */
+	public boolean beginPing(long time, int pingId) {
+
+		if (!beginPing(time)) {
+			return false;
+		}
+		currentOrdinal = pingId;
+		return true;
+	}
+
+	private boolean beginPing(long time) {
+
+		if (time < firstTime || time < sealedTime) {
+			for (Level level : levels) {
+				level.currentBucket = -1;
+			}
+			return false;
+		}
+
+		for (Level level : levels) {
+			level.beginPing(time);
+		}
+		return true;
+	}
+
+	public void addRegion(String region) {
+
+		addRegion(regions.intern(region));
+	}
+
+	/**
+	 * @param region a symbol of {@link #getRegions()}
+	 */
+	public void addRegion(int region) {
+
+		for (Level level : levels) {
+			level.addRegion(region, currentOrdinal);
+		}
+	}
+
+	public void addBeacon(String beaconName, String proximity) {
+
+		addBeacon(beacons.intern(beaconName), proximities.intern(proximity));
+	}
+
+	/**
+	 * @param beacon a symbol of {@link #getBeacons()}
+	 * @param proximity a symbol of {@link #getProximities()}
+	 */
+	public void addBeacon(int beacon, int proximity) {
+
+		for (Level level : levels) {
+			level.addBeacon(beacon, proximity, currentOrdinal);
+		}
+	}
+
+	/**
+	 * Seal the buckets before a time: forget the pings they counted, at every
+	 * resolution, and renumber the ping IDs of the other buckets. The pings of
+	 * a series are then only kept for the recent buckets, which may still
+	 * receive late pings. Pings before the start of the finest bucket holding
+	 * the time can't be counted any more.
+	 * 
+	 * @param time The time
+	 */
+	public void seal(long time) {
+
+		long finest = levels[0].resolution;
+		long bucketTime = time / finest * finest;
+		if (bucketTime <= sealedTime) {
+			return;
+		}
+		sealedTime = bucketTime;
+
+		SymbolDictionary newPingIds = new SymbolDictionary();
+		for (Level level : levels) {
+			level.retain(
+				(int) (bucketTime / level.resolution - level.firstBucket),
+				pingIds, newPingIds);
+		}
+		pingIds = newPingIds;
+	}
+
+	/**
+	 * @return The bucket widths the pings are aggregated at, finest first
+	 */
+	public long[] getResolutions() {
+
+		long[] resolutions = new long[levels.length];
+		for (int i = 0; i < levels.length; i++) {
+			resolutions[i] = levels[i].resolution;
+		}
+		return resolutions;
+	}
+
+	/**
+	 * @param resolution one of {@link #getResolutions()}
+	 * @return true if the pings are aggregated at the resolution
+	 */
+	public boolean hasResolution(long resolution) {
+
+		for (Level level : levels) {
+			if (level.resolution == resolution) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param resolution one of {@link #getResolutions()}
+	 * @return The start time of the first bucket
+	 */
+	public long getFirstBucketTime(long resolution) {
+
+		return getLevel(resolution).getFirstBucketTime();
+	}
+
+	/**
+	 * @param resolution one of {@link #getResolutions()}
+	 * @return The number of buckets from the first bucket up to and including
+	 *         the bucket of the latest ping
+	 */
+	public int getBucketCount(long resolution) {
+
+		return getLevel(resolution).bucketCount;
+	}
+
+	public SymbolDictionary getRegions() {
+
+		return regions;
+	}
+
+	public SymbolDictionary getBeacons() {
+
+		return beacons;
+	}
+
+	public SymbolDictionary getProximities() {
+
+		return proximities;
+	}
+
+	public SymbolDictionary getPingIds() {
+
+		return pingIds;
+	}
+
+	/**
+	 * @param resolution one of {@link #getResolutions()}
+	 * @param region a symbol of {@link #getRegions()}
+	 * @return the counter of the region, or null if it has no pings
+	 */
+	public PingBucketCounter getRegionCounter(long resolution, int region) {
+
+		PingBucketCounter[] regionCounters = getLevel(resolution).regionCounters;
+		return region < regionCounters.length ? regionCounters[region] : null;
+	}
+
+	/**
+	 * @param resolution one of {@link #getResolutions()}
+	 * @param beacon a symbol of {@link #getBeacons()}
+	 * @param proximity a symbol of {@link #getProximities()}
+	 * @return the counter of the beacon/proximity pair, or null if it has no
+	 *         pings
+	 */
+	public PingBucketCounter getBeaconCounter(
+		long resolution, int beacon, int proximity) {
+
+		PingBucketCounter[][] beaconCounters = getLevel(resolution).beaconCounters;
+		if (beacon >= beaconCounters.length || beaconCounters[beacon] == null) {
+			return null;
+		}
+		PingBucketCounter[] proxCounters = beaconCounters[beacon];
+		return proximity < proxCounters.length ? proxCounters[proximity] : null;
+	}
+
+	private Level getLevel(long resolution) {
+
+		for (Level level : levels) {
+			if (level.resolution == resolution) {
+				return level;
+			}
+		}
+		throw new IllegalArgumentException(
+			"Pings aren't aggregated at resolution " + resolution);
+	}
+
+	/**
+	 * The counters of one resolution
+	 */
+	private static class Level {
+
+		private final long resolution;
+		private final long firstBucket;
+		private int bucketCount;
+
+		// [region, counter]
+		private PingBucketCounter[] regionCounters = new PingBucketCounter[16];
+
+		// [beacon, [proximity, counter]]
+		private PingBucketCounter[][] beaconCounters =
+			new PingBucketCounter[16][];
+
+		private int currentBucket;
+
+		private Level(long resolution, BeaconEventMetadata metadata) {
+
+			this.resolution = resolution;
+			this.firstBucket = metadata.getFirstTime() / resolution;
+			this.bucketCount =
+				(int) (metadata.getLastTime() / resolution - firstBucket + 1);
+		}
+
+		private long getFirstBucketTime() {
+
+			return firstBucket * resolution;
+		}
+
+		private void beginPing(long time) {
+
+			currentBucket = (int) (time / resolution - firstBucket);
+			if (currentBucket >= bucketCount) {
+				bucketCount = currentBucket + 1;
+			}
+		}
+
+		private void addRegion(int region, int ordinal) {
+
+			if (region >= regionCounters.length) {
+				regionCounters =
+					Arrays.copyOf(
+						regionCounters,
+						Math.max(region + 1, regionCounters.length * 2));
+			}
+			PingBucketCounter counter = regionCounters[region];
+			if (counter == null) {
+				counter = new PingBucketCounter(bucketCount);
+				regionCounters[region] = counter;
+			}
+			counter.add(currentBucket, ordinal);
+		}
+
+		private void retain(
+			int fromBucket, SymbolDictionary oldPingIds,
+			SymbolDictionary newPingIds) {
+
+			for (PingBucketCounter counter : regionCounters) {
+				if (counter != null) {
+					counter.retain(fromBucket, oldPingIds, newPingIds);
+				}
+			}
+			for (PingBucketCounter[] proxCounters : beaconCounters) {
+				if (proxCounters == null) {
+					continue;
+				}
+				for (PingBucketCounter counter : proxCounters) {
+					if (counter != null) {
+						counter.retain(fromBucket, oldPingIds, newPingIds);
+					}
+				}
+			}
+		}
+
+		private void addBeacon(int beacon, int proximity, int ordinal) {
+
+			if (beacon >= beaconCounters.length) {
+				beaconCounters =
+					Arrays.copyOf(
+						beaconCounters,
+						Math.max(beacon + 1, beaconCounters.length * 2));
+			}
+			PingBucketCounter[] proxCounters = beaconCounters[beacon];
+			if (proxCounters == null) {
+				proxCounters = new PingBucketCounter[Math.max(proximity + 1, 4)];
+				beaconCounters[beacon] = proxCounters;
+			}
+			else if (proximity >= proxCounters.length) {
+				proxCounters = Arrays.copyOf(proxCounters, proximity + 1);
+				beaconCounters[beacon] = proxCounters;
+			}
+			PingBucketCounter counter = proxCounters[proximity];
+			if (counter == null) {
+				counter = new PingBucketCounter(bucketCount);
+				proxCounters[proximity] = counter;
+			}
+			counter.add(currentBucket, ordinal);
+		}
+	}
+}
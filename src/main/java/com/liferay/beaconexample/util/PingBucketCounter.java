@@ -0,0 +1,113 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.Serializable;
+
+/**
+ * Counts the distinct pings seen in each time bucket of a single series (a
+ * region, or a beacon/proximity pair). Buckets are dense from the first
+ * bucket of the event, so the counts are a plain int array indexed by bucket
+ * that grows as later buckets arrive, and distinct ping IDs are tracked as
+ * (bucket, ping ordinal) pairs in a primitive set instead of per-bucket sets
+ * of ID strings.
+ * 
+ * @author James Falkner
+ */
+@SuppressWarnings("serial")
+public class PingBucketCounter implements Serializable {
+
+	private int[] counts;
+	private LongHashSet seen = new LongHashSet();
+	private long lastKey = -1;
+
+	public PingBucketCounter(int initialBuckets) {
+
+		counts = new int[Math.max(initialBuckets, 1)];
+	}
+
+	/**
+	 * Count a ping in a bucket, unless the same ping was already counted there
+	 * @param bucket the time bucket
+	 * @param pingOrdinal the ordinal of the ping ID
+	 */
+	public void add(int bucket, int pingOrdinal) {
+
+		if (bucket < 0) {
+			return;
+		}
+
+		long key = ((long) bucket << 32) | (pingOrdinal & 0xFFFFFFFFL);
+
+		// the same name often repeats within one ping, skip the set lookup
+		if (key == lastKey) {
+			return;
+		}
+		lastKey = key;
+
+		if (seen.add(key)) {
+			if (bucket >= counts.length) {
+				int[] grown = new int[Math.max(bucket + 1, counts.length * 2)];
+				System.arraycopy(counts, 0, grown, 0, counts.length);
+				counts = grown;
+			}
+			counts[bucket]++;
+		}
+	}
+
+	/**
+	 * Forget the pings counted in the buckets before a given bucket, whose
+	 * counts can't change any more, and renumber the pings of the other
+	 * buckets
+	 * @param fromBucket the first bucket whose pings are kept
+	 * @param oldPingIds the ping IDs the ordinals are symbols of
+	 * @param newPingIds the ping IDs to renumber the kept pings with
+	 */
+	public void retain(
+		int fromBucket, SymbolDictionary oldPingIds,
+		SymbolDictionary newPingIds) {
+
+		LongHashSet retained = new LongHashSet();
+		for (long key : seen.toArray()) {
+			int bucket = (int) (key >>> 32);
+			if (bucket >= fromBucket) {
+				int ordinal = newPingIds.intern(oldPingIds.getName((int) key));
+				retained.add(((long) bucket << 32) | (ordinal & 0xFFFFFFFFL));
+			}
+		}
+		seen = retained;
+		lastKey = -1;
+	}
+
+	/**
+	 * @param bucket the time bucket
+	 * @return the number of distinct pings in the bucket
+	 */
+	public int getCount(int bucket) {
+
+		return bucket < counts.length ? counts[bucket] : 0;
+	}
+
+	/**
+	 * @param bucketCount the number of buckets
+	 * @return the counts of the first bucketCount buckets
+	 */
+	public int[] getCounts(int bucketCount) {
+
+		return getCounts(0, bucketCount);
+	}
+
+	/**
+	 * @param fromBucket the first bucket (inclusive)
+	 * @param toBucket the last bucket (exclusive)
+	 * @return the counts of the buckets in the range
+	 */
+	public int[] getCounts(int fromBucket, int toBucket) {
+
+		int[] result = new int[toBucket - fromBucket];
+		int end = Math.min(toBucket, counts.length);
+		if (end > fromBucket) {
+			System.arraycopy(counts, fromBucket, result, 0, end - fromBucket);
+		}
+		return result;
+	}
+}
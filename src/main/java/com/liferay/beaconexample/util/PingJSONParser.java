@@ -0,0 +1,380 @@
+
+package com.liferay.beaconexample.util;
+
+import com.liferay.portal.kernel.json.JSONException;
+
+/**
+ * Streaming parser for the two JSON payloads stored with each ping: the
+ * array of region names and the array of
+ * <code>{"beacon_name": ..., "proximity": ...}</code> objects. Values are
+ * read straight out of the column text and resolved to symbols of the
+ * aggregator's {@link SymbolDictionary}s, so after the first occurrence of a
+ * name no JSON objects or Strings are created for it.
+ * <p>
+ * A parser keeps scratch state and is not thread safe; use one per scan.
+ * 
+ * @author James Falkner
+ */
+public class PingJSONParser {
+
+	private static final String BEACON_NAME_KEY = "beacon_name";
+	private static final String PROXIMITY_KEY = "proximity";
+
+	// scratch buffer for strings that contain escapes
+	private final StringBuilder unescaped = new StringBuilder();
+
+	// location of the last string or literal token
+	private CharSequence token;
+	private int tokenStart;
+	private int tokenEnd;
+
+	private String json;
+	private int pos;
+
+	/**
+	 * Feed every non-blank region of a regions payload to the aggregator.
+	 * Region names are trimmed, and <code>null</code>s are skipped.
+	 * 
+	 * @param json the regions payload, a JSON array of strings
+	 * @param aggregator the aggregator of the current ping
+	 * @throws JSONException if the payload isn't a JSON array
+	 */
+	public void parseRegions(String json, PingAggregator aggregator)
+		throws JSONException {
+
+		SymbolDictionary regions = aggregator.getRegions();
+
+		reset(json);
+		expect('[');
+		if (peek() == ']') {
+			pos++;
+			return;
+		}
+
+		while (true) {
+			if (readValue()) {
+				trimToken();
+				if (!isNullToken()) {
+					aggregator.addRegion(
+						regions.intern(token, tokenStart, tokenEnd));
+				}
+			}
+			if (nextElement(']')) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Feed every beacon of a beacons payload to the aggregator. Beacons
+	 * without a name or proximity are reported with an empty one.
+	 * 
+	 * @param json the beacons payload, a JSON array of objects
+	 * @param aggregator the aggregator of the current ping
+	 * @throws JSONException if the payload isn't a JSON array of objects
+	 */
+	public void parseBeacons(String json, PingAggregator aggregator)
+		throws JSONException {
+
+		SymbolDictionary beacons = aggregator.getBeacons();
+		SymbolDictionary proximities = aggregator.getProximities();
+
+		reset(json);
+		expect('[');
+		if (peek() == ']') {
+			pos++;
+			return;
+		}
+
+		while (true) {
+			int beacon = -1;
+			int proximity = -1;
+
+			expect('{');
+			if (peek() == '}') {
+				pos++;
+			}
+			else {
+				while (true) {
+					expect('"');
+					pos--;
+					readString();
+					boolean isName = tokenEquals(BEACON_NAME_KEY);
+					boolean isProximity = !isName && tokenEquals(PROXIMITY_KEY);
+					expect(':');
+
+					if (isName || isProximity) {
+						if (readValue()) {
+							if (isName) {
+								beacon =
+									beacons.intern(token, tokenStart, tokenEnd);
+							}
+							else {
+								proximity =
+									proximities.intern(token, tokenStart, tokenEnd);
+							}
+						}
+					}
+					else {
+						skipValue();
+					}
+					if (nextElement('}')) {
+						break;
+					}
+				}
+			}
+
+			aggregator.addBeacon(
+				beacon >= 0 ? beacon : beacons.intern(""),
+				proximity >= 0 ? proximity : proximities.intern(""));
+
+			if (nextElement(']')) {
+				return;
+			}
+		}
+	}
+
+	private void reset(String json) {
+
+		this.json = json;
+		this.pos = 0;
+	}
+
+	/**
+	 * Read a string or literal value into the current token
+	 * 
+	 * @return false if the value was a JSON null, or was an object or array
+	 *         (which is skipped)
+	 */
+	private boolean readValue()
+		throws JSONException {
+
+		char c = peek();
+		if (c == '"') {
+			readString();
+			return true;
+		}
+		if (c == '[' || c == '{') {
+			skipValue();
+			return false;
+		}
+
+		int start = pos;
+		while (pos < json.length()) {
+			c = json.charAt(pos);
+			if (c == ',' || c == ']' || c == '}' || isWhitespace(c)) {
+				break;
+			}
+			pos++;
+		}
+		if (pos == start) {
+			throw error("Expected a value");
+		}
+		setToken(json, start, pos);
+		return !isNullToken();
+	}
+
+	/**
+	 * Read a quoted string into the current token. Strings without escapes
+	 * are left in place; others are decoded into the scratch buffer.
+	 */
+	private void readString()
+		throws JSONException {
+
+		int start = ++pos;
+		while (pos < json.length()) {
+			char c = json.charAt(pos);
+			if (c == '"') {
+				setToken(json, start, pos++);
+				return;
+			}
+			if (c == '\\') {
+				unescaped.setLength(0);
+				unescaped.append(json, start, pos);
+				readEscapedString();
+				return;
+			}
+			pos++;
+		}
+		throw error("Unterminated string");
+	}
+
+	private void readEscapedString()
+		throws JSONException {
+
+		while (pos < json.length()) {
+			char c = json.charAt(pos++);
+			if (c == '"') {
+				setToken(unescaped, 0, unescaped.length());
+				return;
+			}
+			if (c != '\\') {
+				unescaped.append(c);
+				continue;
+			}
+			if (pos >= json.length()) {
+				break;
+			}
+			c = json.charAt(pos++);
+			switch (c) {
+			case 'b':
+				unescaped.append('\b');
+				break;
+			case 'f':
+				unescaped.append('\f');
+				break;
+			case 'n':
+				unescaped.append('\n');
+				break;
+			case 'r':
+				unescaped.append('\r');
+				break;
+			case 't':
+				unescaped.append('\t');
+				break;
+			case 'u':
+				if (pos + 4 > json.length()) {
+					throw error("Bad unicode escape");
+				}
+				int code = 0;
+				for (int i = 0; i < 4; i++) {
+					int digit = Character.digit(json.charAt(pos++), 16);
+					if (digit < 0) {
+						throw error("Bad unicode escape");
+					}
+					code = (code << 4) | digit;
+				}
+				unescaped.append((char) code);
+				break;
+			default:
+				unescaped.append(c);
+			}
+		}
+		throw error("Unterminated string");
+	}
+
+	/**
+	 * Skip over any value, including nested objects and arrays
+	 */
+	private void skipValue()
+		throws JSONException {
+
+		char c = peek();
+		if (c == '"') {
+			readString();
+		}
+		else if (c == '[' || c == '{') {
+			char close = c == '[' ? ']' : '}';
+			pos++;
+			if (peek() == close) {
+				pos++;
+				return;
+			}
+			while (true) {
+				if (close == '}') {
+					expect('"');
+					pos--;
+					readString();
+					expect(':');
+				}
+				skipValue();
+				if (nextElement(close)) {
+					return;
+				}
+			}
+		}
+		else {
+			readValue();
+		}
+	}
+
+	/**
+	 * Consume the separator after an element
+	 * 
+	 * @return true if the enclosing array or object was closed
+	 */
+	private boolean nextElement(char close)
+		throws JSONException {
+
+		char c = peek();
+		pos++;
+		if (c == ',') {
+			return false;
+		}
+		if (c == close) {
+			return true;
+		}
+		throw error("Expected ',' or '" + close + "'");
+	}
+
+	private void expect(char c)
+		throws JSONException {
+
+		if (peek() != c) {
+			throw error("Expected '" + c + "'");
+		}
+		pos++;
+	}
+
+	/**
+	 * @return the next non-whitespace character, which is not consumed
+	 */
+	private char peek()
+		throws JSONException {
+
+		while (pos < json.length() && isWhitespace(json.charAt(pos))) {
+			pos++;
+		}
+		if (pos >= json.length()) {
+			throw error("Unexpected end of input");
+		}
+		return json.charAt(pos);
+	}
+
+	private void setToken(CharSequence chars, int start, int end) {
+
+		token = chars;
+		tokenStart = start;
+		tokenEnd = end;
+	}
+
+	private void trimToken() {
+
+		while (tokenStart < tokenEnd &&
+			isWhitespace(token.charAt(tokenStart))) {
+			tokenStart++;
+		}
+		while (tokenEnd > tokenStart &&
+			isWhitespace(token.charAt(tokenEnd - 1))) {
+			tokenEnd--;
+		}
+	}
+
+	private boolean isNullToken() {
+
+		return tokenStart == tokenEnd || tokenEquals("null");
+	}
+
+	private boolean tokenEquals(String s) {
+
+		if (tokenEnd - tokenStart != s.length()) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (token.charAt(tokenStart + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isWhitespace(char c) {
+
+		return c <= ' ';
+	}
+
+	private JSONException error(String message) {
+
+		return new JSONException(message + " at " + pos + " in " + json);
+	}
+}
@@ -0,0 +1,165 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaadin.addon.charts.model.DataSeries;
+import com.vaadin.addon.charts.model.DataSeriesItem;
+import com.vaadin.addon.charts.model.ListSeries;
+import com.vaadin.addon.charts.model.Series;
+import com.vaadin.data.Container;
+
+/**
+ * The ping counts of a single chart series (a region, or a beacon/proximity
+ * pair) at evenly spaced times. The counts are kept in a plain int array and
+ * the times are implied by the point start and interval, which is exactly
+ * what a {@link ListSeries} with <code>pointStart</code>/
+ * <code>pointInterval</code> plot options needs.
+ * 
+ * @author James Falkner
+ */
+@SuppressWarnings("serial")
+public class PingSeries implements Serializable {
+
+	public static final String COUNT_PROPERTY = "Number of Pings";
+	public static final String TIME_PROPERTY = "Time of Day";
+
+	private final String name;
+	private final long pointStart;
+	private final long pointInterval;
+	private final int[] counts;
+
+	public PingSeries(
+		String name, long pointStart, long pointInterval, int[] counts) {
+
+		this.name = name;
+		this.pointStart = pointStart;
+		this.pointInterval = pointInterval;
+		this.counts = counts;
+	}
+
+	public String getName() {
+
+		return name;
+	}
+
+	/**
+	 * @return The time of the first point
+	 */
+	public long getPointStart() {
+
+		return pointStart;
+	}
+
+	/**
+	 * @return The time between two points
+	 */
+	public long getPointInterval() {
+
+		return pointInterval;
+	}
+
+	/**
+	 * @return The number of points
+	 */
+	public int size() {
+
+		return counts.length;
+	}
+
+	/**
+	 * @param index the index of a point
+	 * @return the number of pings at the point
+	 */
+	public int getCount(int index) {
+
+		return counts[index];
+	}
+
+	/**
+	 * @param index the index of a point
+	 * @return the time of the point
+	 */
+	public long getTime(int index) {
+
+		return pointStart + index * pointInterval;
+	}
+
+	/**
+	 * Get the points of this series in a time range
+	 * 
+	 * @param fromTime The start of the range, inclusive
+	 * @param toTime The end of the range, exclusive
+	 * @return A series of the points in the range, which may be empty
+	 */
+	public PingSeries slice(long fromTime, long toTime) {
+
+		// the point whose bucket holds the start of the range is included
+		int from = (int) Math.min(
+			counts.length, Math.max(0, (fromTime - pointStart) / pointInterval));
+		int to = (int) Math.min(
+			counts.length,
+			Math.max(from, (toTime - pointStart + pointInterval - 1) / pointInterval));
+
+		int[] sliced = new int[to - from];
+		System.arraycopy(counts, from, sliced, 0, sliced.length);
+		return new PingSeries(name, getTime(from), pointInterval, sliced);
+	}
+
+	/**
+	 * @return A chart series of the counts; its times come from the
+	 *         <code>pointStart</code>/<code>pointInterval</code> plot options
+	 *         of the chart
+	 */
+	public ListSeries toListSeries() {
+
+		Number[] values = new Number[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			values[i] = counts[i];
+		}
+		return new ListSeries(name, values);
+	}
+
+	/**
+	 * Get a chart series of the counts with at most a given number of points.
+	 * A series with more points is downsampled by a
+	 * {@link PingSeriesDownsampler}; its points carry their own times, so its
+	 * peaks stay at the right place.
+	 * 
+	 * @param maxPoints The maximum number of points, or 0 for all points
+	 * @return A {@link ListSeries} if all points are kept, else a
+	 *         {@link DataSeries}
+	 */
+	public Series toChartSeries(int maxPoints) {
+
+		if (maxPoints <= 0 || counts.length <= maxPoints) {
+			return toListSeries();
+		}
+
+		int[] indexes =
+			PingSeriesDownsampler.downsample(this, Math.max(3, maxPoints));
+
+		List<DataSeriesItem> items = new ArrayList<DataSeriesItem>(indexes.length);
+		for (int index : indexes) {
+			items.add(new DataSeriesItem(getTime(index), counts[index]));
+		}
+
+		DataSeries series = new DataSeries(items);
+		series.setName(name);
+		return series;
+	}
+
+	/**
+	 * Make a read-only container with an item per point, for components that
+	 * need one, like tables. Item IDs are the (Long) point indexes. Items are
+	 * only made for the points a component reads.
+	 * 
+	 * @return a container view of the points
+	 */
+	public Container toContainer() {
+
+		return new PingSeriesContainer(this);
+	}
+}
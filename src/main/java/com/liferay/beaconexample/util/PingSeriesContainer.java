@@ -0,0 +1,283 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.vaadin.data.Container;
+import com.vaadin.data.Item;
+import com.vaadin.data.Property;
+import com.vaadin.data.util.ObjectProperty;
+import com.vaadin.data.util.PropertysetItem;
+
+/**
+ * A read-only container view of a {@link PingSeries}, with an item per
+ * point. Nothing is copied out of the series up front: items and their
+ * properties are made when a component asks for them, which a table only
+ * does for the rows it's rendering. Item IDs are the (Long) point indexes.
+ * 
+ * @author James Falkner
+ */
+@SuppressWarnings("serial")
+public class PingSeriesContainer implements Container.Indexed {
+
+	private static final List<String> PROPERTY_IDS =
+		Collections.unmodifiableList(
+			Arrays.asList(PingSeries.COUNT_PROPERTY, PingSeries.TIME_PROPERTY));
+
+	private final PingSeries series;
+
+	public PingSeriesContainer(PingSeries series) {
+
+		this.series = series;
+	}
+
+	@Override
+	public Item getItem(Object itemId) {
+
+		if (!containsId(itemId)) {
+			return null;
+		}
+
+		int index = toIndex(itemId);
+
+		PropertysetItem item = new PropertysetItem();
+		item.addItemProperty(
+			PingSeries.COUNT_PROPERTY, getCountProperty(index));
+		item.addItemProperty(PingSeries.TIME_PROPERTY, getTimeProperty(index));
+		return item;
+	}
+
+	@Override
+	public Collection<?> getContainerPropertyIds() {
+
+		return PROPERTY_IDS;
+	}
+
+	@Override
+	public Collection<?> getItemIds() {
+
+		return getItemIds(0, series.size());
+	}
+
+	@Override
+	public Property<?> getContainerProperty(Object itemId, Object propertyId) {
+
+		if (!containsId(itemId)) {
+			return null;
+		}
+
+		int index = toIndex(itemId);
+
+		if (PingSeries.COUNT_PROPERTY.equals(propertyId)) {
+			return getCountProperty(index);
+		}
+		if (PingSeries.TIME_PROPERTY.equals(propertyId)) {
+			return getTimeProperty(index);
+		}
+		return null;
+	}
+
+	@Override
+	public Class<?> getType(Object propertyId) {
+
+		if (PingSeries.COUNT_PROPERTY.equals(propertyId)) {
+			return Number.class;
+		}
+		if (PingSeries.TIME_PROPERTY.equals(propertyId)) {
+			return Date.class;
+		}
+		return null;
+	}
+
+	@Override
+	public int size() {
+
+		return series.size();
+	}
+
+	@Override
+	public boolean containsId(Object itemId) {
+
+		if (!(itemId instanceof Long)) {
+			return false;
+		}
+		long index = (Long) itemId;
+		return index >= 0 && index < series.size();
+	}
+
+	@Override
+	public Object nextItemId(Object itemId) {
+
+		return containsId(itemId) ? getIdByIndex(toIndex(itemId) + 1) : null;
+	}
+
+	@Override
+	public Object prevItemId(Object itemId) {
+
+		return containsId(itemId) ? getIdByIndex(toIndex(itemId) - 1) : null;
+	}
+
+	@Override
+	public Object firstItemId() {
+
+		return getIdByIndex(0);
+	}
+
+	@Override
+	public Object lastItemId() {
+
+		return getIdByIndex(series.size() - 1);
+	}
+
+	@Override
+	public boolean isFirstId(Object itemId) {
+
+		return containsId(itemId) && toIndex(itemId) == 0;
+	}
+
+	@Override
+	public boolean isLastId(Object itemId) {
+
+		return containsId(itemId) && toIndex(itemId) == series.size() - 1;
+	}
+
+	@Override
+	public int indexOfId(Object itemId) {
+
+		return containsId(itemId) ? toIndex(itemId) : -1;
+	}
+
+	@Override
+	public Object getIdByIndex(int index) {
+
+		if (index < 0 || index >= series.size()) {
+			return null;
+		}
+		return (long) index;
+	}
+
+	/**
+	 * @return A view of the item IDs of a range of points; the IDs are made
+	 *         as the view is read
+	 */
+	@Override
+	public List<?> getItemIds(int startIndex, int numberOfItems) {
+
+		return new PointIds(
+			startIndex,
+			Math.max(0, Math.min(numberOfItems, series.size() - startIndex)));
+	}
+
+	@Override
+	public Item addItem(Object itemId) {
+
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Object addItem() {
+
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean removeItem(Object itemId) {
+
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean addContainerProperty(
+		Object propertyId, Class<?> type, Object defaultValue) {
+
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean removeContainerProperty(Object propertyId) {
+
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean removeAllItems() {
+
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Object addItemAfter(Object previousItemId) {
+
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Item addItemAfter(Object previousItemId, Object newItemId) {
+
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Object addItemAt(int index) {
+
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Item addItemAt(int index, Object newItemId) {
+
+		throw new UnsupportedOperationException();
+	}
+
+	private Property<Number> getCountProperty(int index) {
+
+		return new ObjectProperty<Number>(
+			series.getCount(index), Number.class, true);
+	}
+
+	private Property<Date> getTimeProperty(int index) {
+
+		return new ObjectProperty<Date>(
+			new Date(series.getTime(index)), Date.class, true);
+	}
+
+	private static int toIndex(Object itemId) {
+
+		return ((Long) itemId).intValue();
+	}
+
+	private static class PointIds extends AbstractList<Long>
+		implements Serializable {
+
+		private final int startIndex;
+		private final int size;
+
+		private PointIds(int startIndex, int size) {
+
+			this.startIndex = startIndex;
+			this.size = size;
+		}
+
+		@Override
+		public Long get(int index) {
+
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index " + index);
+			}
+			return (long) (startIndex + index);
+		}
+
+		@Override
+		public int size() {
+
+			return size;
+		}
+	}
+
+}
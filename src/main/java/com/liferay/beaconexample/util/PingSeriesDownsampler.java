@@ -0,0 +1,89 @@
+
+package com.liferay.beaconexample.util;
+
+/**
+ * Picks the points of a {@link PingSeries} that keep its shape when it has
+ * more points than a chart should draw, using the Largest-Triangle-Three-Buckets
+ * algorithm: the points are split into as many buckets as points are wanted,
+ * and from each bucket the point is kept that makes the largest triangle with
+ * the point kept from the previous bucket and the average of the next bucket.
+ * Peaks and dips survive, where averaging or taking every nth point would
+ * flatten or skip them. The first and last points are always kept.
+ * 
+ * @author James Falkner
+ */
+public class PingSeriesDownsampler {
+
+	/**
+	 * @param series The series
+	 * @param threshold The number of points to keep, at least 3
+	 * @return The indexes of the points to keep, in order; all of them if the
+	 *         series has no more than <code>threshold</code> points
+	 */
+	public static int[] downsample(PingSeries series, int threshold) {
+
+		int size = series.size();
+
+		if (threshold < 3) {
+			throw new IllegalArgumentException("Threshold " + threshold);
+		}
+
+		if (size <= threshold) {
+			int[] indexes = new int[size];
+			for (int i = 0; i < size; i++) {
+				indexes[i] = i;
+			}
+			return indexes;
+		}
+
+		int[] indexes = new int[threshold];
+
+		// the first and last points are kept, the rest split into buckets
+		double bucketSize = (double) (size - 2) / (threshold - 2);
+
+		int a = 0;
+		indexes[0] = a;
+
+		for (int i = 0; i < threshold - 2; i++) {
+
+			// the average of the next bucket, or the last point
+			int avgStart = (int) ((i + 1) * bucketSize) + 1;
+			int avgEnd = Math.min((int) ((i + 2) * bucketSize) + 1, size);
+
+			double avgX = 0;
+			double avgY = 0;
+			for (int j = avgStart; j < avgEnd; j++) {
+				avgX += j;
+				avgY += series.getCount(j);
+			}
+			avgX /= avgEnd - avgStart;
+			avgY /= avgEnd - avgStart;
+
+			// the point of this bucket with the largest triangle
+			int start = (int) (i * bucketSize) + 1;
+			int end = (int) ((i + 1) * bucketSize) + 1;
+
+			int aY = series.getCount(a);
+			double maxArea = -1;
+			int next = start;
+
+			for (int j = start; j < end; j++) {
+				double area = Math.abs(
+					(a - avgX) * (series.getCount(j) - aY) -
+						(a - j) * (avgY - aY));
+				if (area > maxArea) {
+					maxArea = area;
+					next = j;
+				}
+			}
+
+			indexes[i + 1] = next;
+			a = next;
+		}
+
+		indexes[threshold - 1] = size - 1;
+
+		return indexes;
+	}
+
+}
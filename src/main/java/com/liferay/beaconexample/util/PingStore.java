@@ -0,0 +1,822 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.liferay.portal.kernel.log.Log;
+import com.liferay.portal.kernel.log.LogFactoryUtil;
+import com.liferay.portal.kernel.util.FileUtil;
+
+/**
+ * A per-event columnar copy of the beacon pings, kept in memory-mapped files
+ * on local disk. Each ping is a fixed-width record holding its timestamp, a
+ * bitmask of the regions it was seen in, a pointer into a file of ping IDs
+ * and a pointer into a file of beacon/proximity codes. Region, beacon and
+ * proximity names are kept in per-event {@link SymbolDictionary}s that are
+ * persisted next to the data. Ping IDs are unique per ping, so they're only
+ * kept on disk.
+ * <p>
+ * Scans map the files read-only and walk them sequentially, so charting an
+ * event doesn't need a single ORM round trip. A store is only created for a
+ * new event, so it holds every ping of the event.
+ * <p>
+ * The files live in a numbered version directory of the event. A purge
+ * writes the remaining pings to the next version and renames it into place
+ * once it's complete, so a crash leaves either the old or the new version.
+ * Scans and appends share the store's read lock, while a purge or delete
+ * holds its write lock, so neither sees the files change under it.
+ * 
+ * @author James Falkner
+ */
+public class PingStore {
+
+	// time (8) + region mask (8) + ID offset (4) + beacon offset (4) + beacon count (4)
+	private static final int RECORD_SIZE = 28;
+	private static final int BEACON_CODE_SIZE = 4;
+
+	private static final int MAX_REGIONS = 64;
+	private static final int MAX_PROXIMITIES = 256;
+
+	// the ID of a ping is stored as an unsigned short length and UTF-8 bytes
+	private static final int MAX_ID_LENGTH = 0xFFFF;
+
+	private static final String PINGS_FILE = "pings.dat";
+	private static final String BEACONS_FILE = "beacons.dat";
+	private static final String IDS_FILE = "ids.dat";
+	private static final String[] DICTIONARY_FILES = {
+		"regions.dict", "beacons.dict", "proximities.dict"
+	};
+
+	private static final String VERSION_PREFIX = "v";
+	private static final String NEW_VERSION_SUFFIX = ".new";
+	private static final int COMPACT_CHUNK_RECORDS = 4096;
+
+	private static final ConcurrentMap<String, PingStore> stores =
+		new ConcurrentHashMap<String, PingStore>();
+
+	// one per event, held while its store is opened, created, deleted or
+	// compacted, so that work on one event doesn't wait for another
+	private static final ConcurrentMap<String, Object> locks =
+		new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * @return true if the columnar store is enabled in portlet.properties
+	 */
+	public static boolean isEnabled() {
+
+		return PortletPropsValues.BEACONS_STORE_ENABLED;
+	}
+
+	/**
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @return true if the event has data in the columnar store
+	 */
+	public static boolean exists(long companyId, String event) {
+
+		return stores.containsKey(getKey(companyId, event)) ||
+			getVersion(getDir(companyId, event)) > 0;
+	}
+
+	/**
+	 * Open (and create, if needed) the store of an event
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @return The store
+	 * @throws IOException if the store files can't be opened
+	 */
+	public static PingStore getStore(long companyId, String event)
+		throws IOException {
+
+		String key = getKey(companyId, event);
+		PingStore store = stores.get(key);
+		if (store != null) {
+			return store;
+		}
+
+		synchronized (getLock(key)) {
+			store = stores.get(key);
+			if (store == null) {
+				store = new PingStore(getDir(companyId, event));
+				stores.put(key, store);
+			}
+			return store;
+		}
+	}
+
+	/**
+	 * Create an empty store for an event, replacing any files left behind by
+	 * an earlier event of the same name
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @return The store
+	 * @throws IOException if the store files can't be created
+	 */
+	public static PingStore create(long companyId, String event)
+		throws IOException {
+
+		synchronized (getLock(getKey(companyId, event))) {
+			delete(companyId, event);
+			return getStore(companyId, event);
+		}
+	}
+
+	/**
+	 * Delete the store of an event, if there is one. Waits for the scans and
+	 * appends running on the store to finish.
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 */
+	public static void delete(long companyId, String event) {
+
+		String key = getKey(companyId, event);
+
+		synchronized (getLock(key)) {
+			PingStore store = stores.remove(key);
+			if (store != null) {
+				store.close();
+			}
+			FileUtil.deltree(getDir(companyId, event));
+		}
+	}
+
+	/**
+	 * Remove the pings within a time range from the store of an event, if
+	 * there is one. The remaining pings are copied into a new version of the
+	 * files, a chunk at a time, which then replaces the old one. Waits for the
+	 * scans and appends running on the store to finish, and holds off new ones
+	 * until the new version is in place.
+	 * 
+	 * @param companyId The company ID under which the data can be found
+	 * @param event The event name
+	 * @param from The start of the range (inclusive)
+	 * @param to The end of the range (exclusive)
+	 * @throws IOException if the store can't be rewritten
+	 */
+	public static void purge(long companyId, String event, long from, long to)
+		throws IOException {
+
+		String key = getKey(companyId, event);
+
+		synchronized (getLock(key)) {
+			if (!exists(companyId, event)) {
+				return;
+			}
+
+			getStore(companyId, event).compact(from, to);
+		}
+	}
+
+	private final File dir;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final SymbolDictionary regions = new SymbolDictionary();
+	private final SymbolDictionary beacons = new SymbolDictionary();
+	private final SymbolDictionary proximities = new SymbolDictionary();
+
+	// the files of the current version, replaced by a compaction
+	private int version;
+	private FileChannel pingsChannel;
+	private FileChannel beaconsChannel;
+	private FileChannel idsChannel;
+	private DataOutputStream regionsOut;
+	private DataOutputStream beaconsOut;
+	private DataOutputStream proximitiesOut;
+
+	private boolean closed;
+	private int recordCount;
+	private int beaconCodeCount;
+	private int idsSize;
+	private long firstTime = Long.MAX_VALUE;
+	private long lastTime = Long.MIN_VALUE;
+
+	// whether the pings were appended in time order
+	private boolean ordered = true;
+
+	private PingStore(File dir)
+		throws IOException {
+
+		this.dir = dir;
+
+		version = getVersion(dir);
+		if (version == 0) {
+			version = 1;
+			getVersionDir(version).mkdirs();
+		}
+
+		// a purge that didn't finish, or the version it replaced
+		for (File file : listFiles(dir)) {
+			if (!file.equals(getVersionDir(version))) {
+				FileUtil.deltree(file);
+			}
+		}
+
+		open(true);
+
+		// drop any partially written trailing record
+		recordCount = (int) (pingsChannel.size() / RECORD_SIZE);
+		beaconCodeCount = (int) (beaconsChannel.size() / BEACON_CODE_SIZE);
+		idsSize = (int) idsChannel.size();
+		pingsChannel.truncate((long) recordCount * RECORD_SIZE);
+		beaconsChannel.truncate((long) beaconCodeCount * BEACON_CODE_SIZE);
+
+		MappedByteBuffer pings = mapPings(recordCount);
+		for (int i = 0; i < recordCount; i++) {
+			updateRange(pings.getLong(i * RECORD_SIZE));
+		}
+	}
+
+	/**
+	 * Append a batch of pings to the store, using a single write per file
+	 * 
+	 * @param pings The pings
+	 * @throws IOException if the pings can't be written, or the event has
+	 *         more regions, proximities or ping ID bytes than the store can
+	 *         hold
+	 */
+	public void append(List<Ping> pings)
+		throws IOException {
+
+		lock.readLock().lock();
+		try {
+			synchronized (this) {
+				doAppend(pings);
+			}
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void doAppend(List<Ping> pings)
+		throws IOException {
+
+		if (closed) {
+			throw new IOException("The ping store has been closed");
+		}
+
+		int codeCount = 0;
+		long idBytes = 0;
+		byte[][] ids = new byte[pings.size()][];
+		for (int i = 0; i < pings.size(); i++) {
+			Ping ping = pings.get(i);
+			codeCount += ping.getBeaconNames().size();
+
+			String id = ping.getId();
+			ids[i] = id != null ? id.getBytes("UTF-8") : new byte[0];
+			if (ids[i].length > MAX_ID_LENGTH) {
+				throw new IOException(
+					"The columnar store supports ping IDs of at most " +
+						MAX_ID_LENGTH + " bytes");
+			}
+			idBytes += 2 + ids[i].length;
+		}
+		if (idsSize + idBytes > Integer.MAX_VALUE) {
+			throw new IOException(
+				"The columnar store supports at most " + Integer.MAX_VALUE +
+					" bytes of ping IDs per event");
+		}
+
+		ByteBuffer records = ByteBuffer.allocate(pings.size() * RECORD_SIZE);
+		ByteBuffer codes = ByteBuffer.allocate(codeCount * BEACON_CODE_SIZE);
+		ByteBuffer idData = ByteBuffer.allocate((int) idBytes);
+
+		int beaconOffset = beaconCodeCount;
+		int idOffset = idsSize;
+		for (int p = 0; p < pings.size(); p++) {
+			Ping ping = pings.get(p);
+
+			long regionMask = 0;
+			for (String region : ping.getRegions()) {
+				int symbol = intern(regions, regionsOut, region);
+				if (symbol >= MAX_REGIONS) {
+					throw new IOException(
+						"The columnar store supports at most " + MAX_REGIONS +
+							" regions per event");
+				}
+				regionMask |= 1L << symbol;
+			}
+
+			List<String> beaconNames = ping.getBeaconNames();
+			List<String> beaconProximities = ping.getBeaconProximities();
+			for (int i = 0; i < beaconNames.size(); i++) {
+				int beacon = intern(beacons, beaconsOut, beaconNames.get(i));
+				int proximity =
+					intern(proximities, proximitiesOut, beaconProximities.get(i));
+				if (proximity >= MAX_PROXIMITIES) {
+					throw new IOException(
+						"The columnar store supports at most " + MAX_PROXIMITIES +
+							" proximities per event");
+				}
+				codes.putInt((beacon << 8) | proximity);
+			}
+
+			idData.putShort((short) ids[p].length);
+			idData.put(ids[p]);
+
+			records.putLong(ping.getTime());
+			records.putLong(regionMask);
+			records.putInt(idOffset);
+			records.putInt(beaconOffset);
+			records.putInt(beaconNames.size());
+			idOffset += 2 + ids[p].length;
+			beaconOffset += beaconNames.size();
+		}
+		records.flip();
+		codes.flip();
+		idData.flip();
+
+		// IDs and beacon codes first, so a record never points past their files
+		writeFully(idsChannel, idData, idsSize);
+		writeFully(beaconsChannel, codes, (long) beaconCodeCount * BEACON_CODE_SIZE);
+		writeFully(pingsChannel, records, (long) recordCount * RECORD_SIZE);
+
+		idsSize = idOffset;
+		beaconCodeCount += codeCount;
+		recordCount += pings.size();
+		for (Ping ping : pings) {
+			updateRange(ping.getTime());
+		}
+	}
+
+	/**
+	 * Feed every ping of the store to the initial scan of a rollup, using a
+	 * sequential read of the memory-mapped files. If the pings were appended
+	 * in time order, the rollup seals its buckets as the scan advances.
+	 * 
+	 * @param rollup The rollup
+	 * @param monitor Checked as the pings are read, to abandon the scan
+	 * @return false if the store has been deleted, in which case nothing was
+	 *         fed to the rollup
+	 * @throws IOException if the store can't be read
+	 */
+	public boolean scan(EventRollup rollup, ScanMonitor monitor)
+		throws IOException {
+
+		PingAggregator aggregator = rollup.getAggregator();
+
+		lock.readLock().lock();
+		try {
+			int count;
+			int codeCount;
+			int idCount;
+			boolean inTimeOrder;
+			synchronized (this) {
+				if (closed) {
+					return false;
+				}
+				count = recordCount;
+				codeCount = beaconCodeCount;
+				idCount = idsSize;
+				inTimeOrder = ordered;
+			}
+
+			// names are only ever added, so a snapshot covers every mapped
+			// record; translate the store's symbols to the aggregator's once
+			int[] regionSymbols = translate(regions, aggregator.getRegions());
+			int[] beaconSymbols = translate(beacons, aggregator.getBeacons());
+			int[] proximitySymbols =
+				translate(proximities, aggregator.getProximities());
+
+			MappedByteBuffer pings = mapPings(count);
+			MappedByteBuffer codes =
+				beaconsChannel.map(
+					FileChannel.MapMode.READ_ONLY, 0,
+					(long) codeCount * BEACON_CODE_SIZE);
+			MappedByteBuffer ids =
+				idsChannel.map(FileChannel.MapMode.READ_ONLY, 0, idCount);
+			byte[] id = new byte[64];
+
+			for (int i = 0; i < count; i++) {
+				monitor.checkCancelled(i);
+
+				long time = pings.getLong();
+				long regionMask = pings.getLong();
+				int idOffset = pings.getInt();
+				int beaconOffset = pings.getInt();
+				int beaconCount = pings.getInt();
+
+				int idLength = ids.getShort(idOffset) & MAX_ID_LENGTH;
+				if (idLength > id.length) {
+					id = new byte[Math.max(idLength, id.length * 2)];
+				}
+				ids.position(idOffset + 2);
+				ids.get(id, 0, idLength);
+
+				if (inTimeOrder) {
+					rollup.scanned(time);
+				}
+				aggregator.beginPing(time, new String(id, 0, idLength, "UTF-8"));
+
+				while (regionMask != 0) {
+					int symbol = Long.numberOfTrailingZeros(regionMask);
+					aggregator.addRegion(regionSymbols[symbol]);
+					regionMask &= regionMask - 1;
+				}
+
+				for (int b = 0; b < beaconCount; b++) {
+					int code = codes.getInt((beaconOffset + b) * BEACON_CODE_SIZE);
+					aggregator.addBeacon(
+						beaconSymbols[code >>> 8], proximitySymbols[code & 0xFF]);
+				}
+			}
+			return true;
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private static int[] translate(SymbolDictionary from, SymbolDictionary to) {
+
+		String[] names = from.getNames();
+		int[] symbols = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			symbols[i] = to.intern(names[i]);
+		}
+		return symbols;
+	}
+
+	/**
+	 * @return The first/last date and row count of the stored pings, or null
+	 *         if the store is empty
+	 */
+	public synchronized BeaconEventMetadata getMetadata() {
+
+		if (recordCount == 0) {
+			return null;
+		}
+		return new BeaconEventMetadata(firstTime, lastTime, recordCount);
+	}
+
+	/**
+	 * Copy every ping outside a time range into the next version of the
+	 * files, then switch the store over to it
+	 */
+	private void compact(long from, long to)
+		throws IOException {
+
+		lock.writeLock().lock();
+		try {
+			if (closed) {
+				return;
+			}
+
+			File newDir =
+				new File(dir, VERSION_PREFIX + (version + 1) + NEW_VERSION_SUFFIX);
+			FileUtil.deltree(newDir);
+			newDir.mkdirs();
+
+			File versionDir = getVersionDir(version);
+			for (String fileName : DICTIONARY_FILES) {
+				File file = new File(versionDir, fileName);
+				if (file.exists()) {
+					FileUtil.copyFile(file, new File(newDir, fileName));
+				}
+			}
+
+			long keptFirstTime = Long.MAX_VALUE;
+			long keptLastTime = Long.MIN_VALUE;
+			boolean keptOrdered = true;
+			int keptCount = 0;
+			int keptCodeCount = 0;
+			int keptIdsSize = 0;
+
+			FileChannel pingsOut =
+				new RandomAccessFile(new File(newDir, PINGS_FILE), "rw").getChannel();
+			FileChannel beaconsOut =
+				new RandomAccessFile(new File(newDir, BEACONS_FILE), "rw").getChannel();
+			FileChannel idsOut =
+				new RandomAccessFile(new File(newDir, IDS_FILE), "rw").getChannel();
+
+			try {
+				MappedByteBuffer pings = mapPings(recordCount);
+				MappedByteBuffer codes =
+					beaconsChannel.map(
+						FileChannel.MapMode.READ_ONLY, 0,
+						(long) beaconCodeCount * BEACON_CODE_SIZE);
+				MappedByteBuffer ids =
+					idsChannel.map(FileChannel.MapMode.READ_ONLY, 0, idsSize);
+
+				ByteBuffer records =
+					ByteBuffer.allocate(COMPACT_CHUNK_RECORDS * RECORD_SIZE);
+				ByteBuffer keptCodes =
+					ByteBuffer.allocate(COMPACT_CHUNK_RECORDS * BEACON_CODE_SIZE);
+				ByteBuffer keptIds =
+					ByteBuffer.allocate(COMPACT_CHUNK_RECORDS * 64);
+
+				for (int i = 0; i < recordCount; i++) {
+					long time = pings.getLong();
+					long regionMask = pings.getLong();
+					int idOffset = pings.getInt();
+					int beaconOffset = pings.getInt();
+					int beaconCount = pings.getInt();
+
+					if (time >= from && time < to) {
+						continue;
+					}
+
+					int idBytes = 2 + (ids.getShort(idOffset) & MAX_ID_LENGTH);
+
+					if (!records.hasRemaining() ||
+						keptCodes.remaining() < beaconCount * BEACON_CODE_SIZE ||
+						keptIds.remaining() < idBytes) {
+
+						flush(idsOut, keptIds);
+						flush(beaconsOut, keptCodes);
+						flush(pingsOut, records);
+						if (keptCodes.remaining() < beaconCount * BEACON_CODE_SIZE) {
+							keptCodes = ByteBuffer.allocate(beaconCount * BEACON_CODE_SIZE);
+						}
+						if (keptIds.remaining() < idBytes) {
+							keptIds = ByteBuffer.allocate(idBytes);
+						}
+					}
+
+					for (int b = 0; b < beaconCount; b++) {
+						keptCodes.putInt(
+							codes.getInt((beaconOffset + b) * BEACON_CODE_SIZE));
+					}
+
+					ByteBuffer id = ids.duplicate();
+					id.position(idOffset);
+					id.limit(idOffset + idBytes);
+					keptIds.put(id);
+
+					records.putLong(time);
+					records.putLong(regionMask);
+					records.putInt(keptIdsSize);
+					records.putInt(keptCodeCount);
+					records.putInt(beaconCount);
+					keptIdsSize += idBytes;
+					keptCodeCount += beaconCount;
+					keptCount++;
+
+					if (time < keptLastTime) {
+						keptOrdered = false;
+					}
+					keptFirstTime = Math.min(keptFirstTime, time);
+					keptLastTime = Math.max(keptLastTime, time);
+				}
+
+				flush(idsOut, keptIds);
+				flush(beaconsOut, keptCodes);
+				flush(pingsOut, records);
+				pingsOut.force(true);
+				beaconsOut.force(true);
+				idsOut.force(true);
+			}
+			finally {
+				pingsOut.close();
+				beaconsOut.close();
+				idsOut.close();
+			}
+
+			// the rename is what makes the new version current
+			if (!newDir.renameTo(getVersionDir(version + 1))) {
+				throw new IOException("Unable to rename " + newDir);
+			}
+
+			synchronized (this) {
+				closeFiles();
+				version++;
+				recordCount = keptCount;
+				beaconCodeCount = keptCodeCount;
+				idsSize = keptIdsSize;
+				firstTime = keptFirstTime;
+				lastTime = keptLastTime;
+				ordered = keptOrdered;
+
+				try {
+					open(false);
+				}
+				catch (IOException e) {
+					closed = true;
+					throw e;
+				}
+			}
+
+			FileUtil.deltree(versionDir);
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer)
+		throws IOException {
+
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void close() {
+
+		lock.writeLock().lock();
+		try {
+			synchronized (this) {
+				if (!closed) {
+					closed = true;
+					closeFiles();
+				}
+			}
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Open the files of the current version
+	 * @param load true to load the dictionaries, which are only read once
+	 */
+	private void open(boolean load)
+		throws IOException {
+
+		File versionDir = getVersionDir(version);
+
+		pingsChannel = openChannel(versionDir, PINGS_FILE);
+		beaconsChannel = openChannel(versionDir, BEACONS_FILE);
+		idsChannel = openChannel(versionDir, IDS_FILE);
+
+		regionsOut =
+			openDictionary(versionDir, DICTIONARY_FILES[0], load ? regions : null);
+		beaconsOut =
+			openDictionary(versionDir, DICTIONARY_FILES[1], load ? beacons : null);
+		proximitiesOut =
+			openDictionary(
+				versionDir, DICTIONARY_FILES[2], load ? proximities : null);
+	}
+
+	private void closeFiles() {
+
+		try {
+			pingsChannel.close();
+			beaconsChannel.close();
+			idsChannel.close();
+			regionsOut.close();
+			beaconsOut.close();
+			proximitiesOut.close();
+		}
+		catch (IOException e) {
+			_log.error("Unable to close the ping store in " + dir, e);
+		}
+	}
+
+	private MappedByteBuffer mapPings(int count)
+		throws IOException {
+
+		return pingsChannel.map(
+			FileChannel.MapMode.READ_ONLY, 0, (long) count * RECORD_SIZE);
+	}
+
+	private void updateRange(long time) {
+
+		if (time < lastTime) {
+			ordered = false;
+		}
+		if (time < firstTime) {
+			firstTime = time;
+		}
+		if (time > lastTime) {
+			lastTime = time;
+		}
+	}
+
+	private File getVersionDir(int version) {
+
+		return new File(dir, VERSION_PREFIX + version);
+	}
+
+	/**
+	 * @return The highest complete version in an event's directory, or 0 if
+	 *         there is none
+	 */
+	private static int getVersion(File dir) {
+
+		int version = 0;
+		for (File file : listFiles(dir)) {
+			String name = file.getName();
+			if (file.isDirectory() && name.startsWith(VERSION_PREFIX) &&
+				!name.endsWith(NEW_VERSION_SUFFIX)) {
+
+				try {
+					version = Math.max(
+						version,
+						Integer.parseInt(name.substring(VERSION_PREFIX.length())));
+				}
+				catch (NumberFormatException nfe) {
+					// not a version
+				}
+			}
+		}
+		return version;
+	}
+
+	private static File[] listFiles(File dir) {
+
+		File[] files = dir.listFiles();
+		return files != null ? files : new File[0];
+	}
+
+	private static FileChannel openChannel(File dir, String fileName)
+		throws FileNotFoundException {
+
+		return new RandomAccessFile(new File(dir, fileName), "rw").getChannel();
+	}
+
+	private static DataOutputStream openDictionary(
+		File dir, String fileName, SymbolDictionary dictionary)
+		throws IOException {
+
+		File file = new File(dir, fileName);
+		if (dictionary != null && file.exists()) {
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try {
+				while (true) {
+					dictionary.intern(in.readUTF());
+				}
+			}
+			catch (EOFException eof) {
+				// end of dictionary
+			}
+			finally {
+				in.close();
+			}
+		}
+		return new DataOutputStream(new FileOutputStream(file, true));
+	}
+
+	private static int intern(
+		SymbolDictionary dictionary, DataOutputStream out, String name)
+		throws IOException {
+
+		int size = dictionary.size();
+		int symbol = dictionary.intern(name);
+		if (symbol == size) {
+			out.writeUTF(name);
+			out.flush();
+		}
+		return symbol;
+	}
+
+	private static void writeFully(
+		FileChannel channel, ByteBuffer buffer, long position)
+		throws IOException {
+
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private static File getDir(long companyId, String event) {
+
+		try {
+			return new File(
+				PortletPropsValues.BEACONS_STORE_DIR + "/" + companyId + "/" +
+					URLEncoder.encode(event, "UTF-8"));
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String getKey(long companyId, String event) {
+
+		return companyId + "#" + event;
+	}
+
+	private static Object getLock(String key) {
+
+		Object lock = locks.get(key);
+		if (lock == null) {
+			locks.putIfAbsent(key, new Object());
+			lock = locks.get(key);
+		}
+		return lock;
+	}
+
+	private static Log _log = LogFactoryUtil.getLog(PingStore.class);
+
+}
@@ -0,0 +1,47 @@
+
+package com.liferay.beaconexample.util;
+
+/**
+ * Keys of the settings in portlet.properties
+ * 
+ * @author James Falkner
+ */
+public class PortletPropsKeys {
+
+	public static final String BEACONS_CHART_DOWNSAMPLE_POINTS =
+		"beacons.chart.downsample.points";
+
+	public static final String BEACONS_CHART_MAX_POINTS =
+		"beacons.chart.max.points";
+
+	public static final String BEACONS_CLUSTER_NOTICE_SECONDS =
+		"beacons.cluster.notice.seconds";
+
+	public static final String BEACONS_DATE_INDEX_MAX_EVENTS =
+		"beacons.date.index.max.events";
+
+	public static final String BEACONS_INGEST_BATCH_SIZE =
+		"beacons.ingest.batch.size";
+
+	public static final String BEACONS_LOAD_QUEUE_SIZE =
+		"beacons.load.queue.size";
+
+	public static final String BEACONS_LOAD_THREADS = "beacons.load.threads";
+
+	public static final String BEACONS_PURGE_CHUNK_SIZE =
+		"beacons.purge.chunk.size";
+
+	public static final String BEACONS_RESOLUTION_MINUTES =
+		"beacons.resolution.minutes";
+
+	public static final String BEACONS_ROLLUP_LATE_MINUTES =
+		"beacons.rollup.late.minutes";
+
+	public static final String BEACONS_ROLLUP_MAX_EVENTS =
+		"beacons.rollup.max.events";
+
+	public static final String BEACONS_STORE_DIR = "beacons.store.dir";
+
+	public static final String BEACONS_STORE_ENABLED = "beacons.store.enabled";
+
+}
@@ -0,0 +1,99 @@
+
+package com.liferay.beaconexample.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.liferay.portal.kernel.util.ArrayUtil;
+import com.liferay.portal.kernel.util.GetterUtil;
+import com.liferay.portal.kernel.util.PropsKeys;
+import com.liferay.portal.kernel.util.PropsUtil;
+import com.liferay.portal.kernel.util.StringUtil;
+import com.liferay.portal.kernel.util.Time;
+import com.liferay.portal.kernel.util.Validator;
+import com.liferay.util.portlet.PortletProps;
+
+/**
+ * Values of the settings in portlet.properties
+ * 
+ * @author James Falkner
+ */
+public class PortletPropsValues {
+
+	public static final int BEACONS_CHART_DOWNSAMPLE_POINTS =
+		GetterUtil.getInteger(
+			PortletProps.get(PortletPropsKeys.BEACONS_CHART_DOWNSAMPLE_POINTS),
+			2000);
+
+	public static final int BEACONS_CHART_MAX_POINTS = GetterUtil.getInteger(
+		PortletProps.get(PortletPropsKeys.BEACONS_CHART_MAX_POINTS), 1000);
+
+	public static final int BEACONS_CLUSTER_NOTICE_SECONDS =
+		GetterUtil.getInteger(
+			PortletProps.get(PortletPropsKeys.BEACONS_CLUSTER_NOTICE_SECONDS), 5);
+
+	public static final int BEACONS_DATE_INDEX_MAX_EVENTS =
+		GetterUtil.getInteger(
+			PortletProps.get(PortletPropsKeys.BEACONS_DATE_INDEX_MAX_EVENTS), 20);
+
+	public static final int BEACONS_INGEST_BATCH_SIZE = GetterUtil.getInteger(
+		PortletProps.get(PortletPropsKeys.BEACONS_INGEST_BATCH_SIZE), 500);
+
+	public static final int BEACONS_LOAD_QUEUE_SIZE = GetterUtil.getInteger(
+		PortletProps.get(PortletPropsKeys.BEACONS_LOAD_QUEUE_SIZE), 20);
+
+	public static final int BEACONS_LOAD_THREADS = GetterUtil.getInteger(
+		PortletProps.get(PortletPropsKeys.BEACONS_LOAD_THREADS), 2);
+
+	public static final int BEACONS_PURGE_CHUNK_SIZE = GetterUtil.getInteger(
+		PortletProps.get(PortletPropsKeys.BEACONS_PURGE_CHUNK_SIZE), 1000);
+
+	public static final long[] BEACONS_RESOLUTIONS = getResolutions();
+
+	public static final int BEACONS_ROLLUP_LATE_MINUTES = GetterUtil.getInteger(
+		PortletProps.get(PortletPropsKeys.BEACONS_ROLLUP_LATE_MINUTES), 60);
+
+	public static final int BEACONS_ROLLUP_MAX_EVENTS = GetterUtil.getInteger(
+		PortletProps.get(PortletPropsKeys.BEACONS_ROLLUP_MAX_EVENTS), 20);
+
+	public static final String BEACONS_STORE_DIR = getStoreDir();
+
+	public static final boolean BEACONS_STORE_ENABLED = GetterUtil.getBoolean(
+		PortletProps.get(PortletPropsKeys.BEACONS_STORE_ENABLED));
+
+	private static long[] getResolutions() {
+
+		long[] minutes = StringUtil.split(
+			PortletProps.get(PortletPropsKeys.BEACONS_RESOLUTION_MINUTES), 0L);
+
+		List<Long> resolutions = new ArrayList<Long>();
+		for (long minute : minutes) {
+			if ((minute > 0) && !resolutions.contains(minute * Time.MINUTE)) {
+				resolutions.add(minute * Time.MINUTE);
+			}
+		}
+		if (resolutions.isEmpty()) {
+			return new long[] {5 * Time.MINUTE, Time.HOUR};
+		}
+
+		// the default chart data is at five minutes
+		if (!resolutions.contains(5 * Time.MINUTE)) {
+			resolutions.add(5 * Time.MINUTE);
+		}
+
+		// finest to coarsest, as resolutions are picked in that order
+		Collections.sort(resolutions);
+		return ArrayUtil.toArray(resolutions.toArray(new Long[0]));
+	}
+
+	private static String getStoreDir() {
+
+		String dir = PortletProps.get(PortletPropsKeys.BEACONS_STORE_DIR);
+		if (Validator.isNotNull(dir)) {
+			return dir;
+		}
+		return PropsUtil.get(PropsKeys.LIFERAY_HOME) + "/data/beacons";
+	}
+
+}
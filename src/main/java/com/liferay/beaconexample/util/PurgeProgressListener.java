@@ -0,0 +1,21 @@
+
+package com.liferay.beaconexample.util;
+
+/**
+ * Receives progress updates while {@link BeaconPurgeService} purges an event
+ * 
+ * @author James Falkner
+ */
+public interface PurgeProgressListener {
+
+	/**
+	 * Called after each chunk of rows has been processed
+	 * 
+	 * @param event The event being purged
+	 * @param scanned The number of rows examined so far
+	 * @param total The number of rows in the event when the purge started
+	 * @param purged The number of rows deleted so far
+	 */
+	public void onProgress(String event, long scanned, long total, long purged);
+
+}
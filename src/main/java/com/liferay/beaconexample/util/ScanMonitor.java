@@ -0,0 +1,21 @@
+
+package com.liferay.beaconexample.util;
+
+/**
+ * Lets the owner of a long running scan of pings abandon it
+ * 
+ * @author James Falkner
+ */
+public interface ScanMonitor {
+
+	/**
+	 * Called for each ping scanned; implementations only need to do real work
+	 * every so often
+	 * 
+	 * @param scanned the number of pings scanned so far
+	 * @throws java.util.concurrent.CancellationException if the scan should
+	 *         be abandoned
+	 */
+	public void checkCancelled(int scanned);
+
+}
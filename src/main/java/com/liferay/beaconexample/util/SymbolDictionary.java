@@ -0,0 +1,160 @@
+
+package com.liferay.beaconexample.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Maps frequently repeated names (regions, beacons, proximities, device IDs)
+ * to small, dense int symbols and back. Names can be looked up straight from
+ * a range of characters, so a parser can resolve a name it has only seen in
+ * its input without first copying it into a new String.
+ * 
+ * @author James Falkner
+ */
+@SuppressWarnings("serial")
+public class SymbolDictionary implements Serializable {
+
+	private String[] names = new String[16];
+	private int[] hashes = new int[16];
+	private int size;
+
+	// open addressing table of symbol + 1, 0 marks an empty slot
+	private int[] slots = new int[32];
+
+	/**
+	 * Get the symbol of a name, adding it to the dictionary if it's new
+	 * @param name the name
+	 * @return the symbol of the name
+	 */
+	public synchronized int intern(String name) {
+
+		return intern(name, 0, name.length());
+	}
+
+	/**
+	 * Get the symbol of the name held in a range of characters, adding it to
+	 * the dictionary if it's new. A String is only created for new names.
+	 * 
+	 * @param chars the characters holding the name
+	 * @param start the start of the name (inclusive)
+	 * @param end the end of the name (exclusive)
+	 * @return the symbol of the name
+	 */
+	public synchronized int intern(CharSequence chars, int start, int end) {
+
+		int hash = hash(chars, start, end);
+		int slot = find(chars, start, end, hash);
+		if (slots[slot] != 0) {
+			return slots[slot] - 1;
+		}
+
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+		int symbol = size++;
+		names[symbol] = chars.subSequence(start, end).toString();
+		hashes[symbol] = hash;
+		slots[slot] = symbol + 1;
+
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		return symbol;
+	}
+
+	/**
+	 * @param name the name
+	 * @return the symbol of the name, or -1 if the name isn't in the dictionary
+	 */
+	public synchronized int lookup(String name) {
+
+		int slot = find(name, 0, name.length(), name.hashCode());
+		return slots[slot] - 1;
+	}
+
+	public synchronized String getName(int symbol) {
+
+		if (symbol >= size) {
+			throw new IndexOutOfBoundsException("No symbol " + symbol);
+		}
+		return names[symbol];
+	}
+
+	public synchronized int size() {
+
+		return size;
+	}
+
+	/**
+	 * @return the names of all symbols, indexed by symbol
+	 */
+	public synchronized String[] getNames() {
+
+		return Arrays.copyOf(names, size);
+	}
+
+	private int find(CharSequence chars, int start, int end, int hash) {
+
+		int mask = slots.length - 1;
+		int slot = mix(hash) & mask;
+		while (slots[slot] != 0) {
+			int symbol = slots[slot] - 1;
+			if (hashes[symbol] == hash && matches(names[symbol], chars, start, end)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash() {
+
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int symbol = 0; symbol < size; symbol++) {
+			int slot = mix(hashes[symbol]) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = symbol + 1;
+		}
+	}
+
+	private static boolean matches(
+		String name, CharSequence chars, int start, int end) {
+
+		if (name.length() != end - start) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != chars.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The same hash as String.hashCode(), so interning a String can use its
+	 * cached hash
+	 */
+	private static int hash(CharSequence chars, int start, int end) {
+
+		if (chars instanceof String && start == 0 && end == chars.length()) {
+			return chars.hashCode();
+		}
+
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + chars.charAt(i);
+		}
+		return hash;
+	}
+
+	private static int mix(int hash) {
+
+		return hash ^ (hash >>> 16);
+	}
+}